@@ -0,0 +1,87 @@
+import seamcarving.bench.Kernels;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+// Kernels的实现，与库代码同在默认包中，可以直接调用
+public class BenchmarkKernels implements Kernels {
+
+    public int[] grayscale(int[] image, int stride, int width, int height) {
+        return Utils.grayscale(image, stride, width, height);
+    }
+
+    public int[] sobel(int[] gray, int stride, int width, int height) {
+        return Utils.sobel(gray, stride, width, height);
+    }
+
+    public int[][] toImage(int[] image, int width, int height, int stride, boolean horizontal) {
+        return Utils.toImage(image, width, height, stride, horizontal);
+    }
+
+    public int[][] readImage(File file) {
+        return Utils.readImage(file);
+    }
+
+    public void writeImage(int[][] image, File file) throws IOException {
+        Utils.writeImage(image, file);
+    }
+
+    public Kernels.Pixel pixel(String impl) {
+        PixelKernels kernels = impl.equals("vector") ? Utils.vectorKernels() : new ScalarKernels();
+        if (kernels == null)
+            throw new IllegalStateException("Vector kernels need the vector module and " +
+                    "--add-modules jdk.incubator.vector");
+        return new Kernels.Pixel() {
+            public void grayscale(int[] image, int[] gray, int from, int to) {
+                kernels.grayscale(image, gray, from, to);
+            }
+
+            public void sobel(int[] gray, int[] energy, int stride, int width, int height, int y) {
+                kernels.sobel(gray, energy, stride, width, height, y);
+            }
+
+            public void minRow(int[] energy, int offset, int[] below, int[] row, int from, int to) {
+                kernels.minRow(energy, offset, below, row, from, to);
+            }
+        };
+    }
+
+    public Kernels.Carver carver(int[][] image, String type, boolean horizontal) {
+        EnergyType energy = EnergyType.valueOf(type.toUpperCase(Locale.ROOT));
+        SeamCarver carver = new SeamCarverFactory().create(image, horizontal, energy);
+        carver.setUpdate(false);
+        return new Kernels.Carver() {
+            public void setBatchSize(int batchSize) {
+                carver.setBatchSize(batchSize);
+            }
+
+            // 只有反向和前向能量有完整的能量图
+            public void energyMap() {
+                if (carver instanceof SeamCarverBackward) {
+                    ((SeamCarverBackward) carver).energyMap();
+                } else if (carver instanceof SeamCarverForward) {
+                    ((SeamCarverForward) carver).energyMap();
+                } else {
+                    throw new UnsupportedOperationException("No energy map for " + type);
+                }
+            }
+
+            public int remove(int count) {
+                return carver.remove(count, false, 0);
+            }
+
+            public int add(int count) {
+                return carver.add(count, false, 0);
+            }
+
+            public boolean add() {
+                return carver.add(false, 0);
+            }
+
+            public int getWidth() {
+                return carver.getWidth();
+            }
+        };
+    }
+}
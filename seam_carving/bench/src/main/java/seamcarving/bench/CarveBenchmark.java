@@ -0,0 +1,84 @@
+package seamcarving.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 删除和插入seam，结果的单位是每秒的seam个数
+// 每次调用前都重新创建carver，创建的时间不计入结果
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CarveBenchmark {
+    public static final int SEAMS = 32; // 每次调用删除或插入的seam个数
+
+    @Param({ "640x480", "1920x1080", "3840x2160" })
+    public String size;
+
+    @Param({ "backward", "forward", "pyramid" })
+    public String type;
+
+    private Kernels kernels;
+    private int[][] image;
+    private Kernels.Carver carver;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.kernels = Kernels.load();
+        this.image = Images.synthetic(this.size, 2);
+    }
+
+    @Setup(Level.Invocation)
+    public void carver() {
+        this.carver = this.kernels.carver(this.image, this.type, false);
+    }
+
+    // 逐个删除，每个seam之后更新能量图
+    @Benchmark
+    @OperationsPerInvocation(SEAMS)
+    public int removeSingle() {
+        return this.carver.remove(SEAMS);
+    }
+
+    // 从同一张能量图中一次取出所有seam
+    @Benchmark
+    @OperationsPerInvocation(SEAMS)
+    public int removeBulk() {
+        this.carver.setBatchSize(SEAMS);
+        return this.carver.remove(SEAMS);
+    }
+
+    // 逐个插入，第一次插入时规划好后续的seam
+    @Benchmark
+    @OperationsPerInvocation(SEAMS)
+    public int addSingle() {
+        int added = 0;
+        for (int i = 0; i < SEAMS; i++) {
+            if (this.carver.add())
+                added++;
+        }
+        return added;
+    }
+
+    // 一次插入所有seam，每行只移动一次
+    @Benchmark
+    @OperationsPerInvocation(SEAMS)
+    public int addBulk() {
+        return this.carver.add(SEAMS);
+    }
+}
@@ -0,0 +1,43 @@
+package seamcarving.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 完整地计算一次累计能量图，图像不变，每次的结果相同
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnergyBenchmark {
+    @Param({ "640x480", "1920x1080", "3840x2160" })
+    public String size;
+
+    @Param({ "backward", "forward" })
+    public String type;
+
+    private Kernels.Carver carver;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.carver = Kernels.load().carver(Images.synthetic(this.size, 3), this.type, false);
+    }
+
+    @Benchmark
+    public void energyMap() {
+        this.carver.energyMap();
+    }
+}
@@ -0,0 +1,41 @@
+package seamcarving.bench;
+
+import java.util.Random;
+
+// 基准测试使用的合成图像：平滑的渐变加上噪声和几条竖直的边缘，不需要图像文件
+final class Images {
+    private Images() {
+    }
+
+    // size的格式为"宽x高"
+    static int[][] synthetic(String size, long seed) {
+        String[] parts = size.split("x");
+        return synthetic(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), seed);
+    }
+
+    static int[][] synthetic(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[][] image = new int[height][width];
+        for (int h = 0; h < height; h++) {
+            for (int w = 0; w < width; w++) {
+                int base = (w * 255 / width + h * 255 / height) / 2;
+                if (w % 97 < 3)
+                    base = 255 - base; // 边缘
+                int noise = random.nextInt(32);
+                int r = (base + noise) & 0xFF, g = (base * 3 / 4 + noise) & 0xFF, b = (255 - base) & 0xFF;
+                image[h][w] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+        }
+        return image;
+    }
+
+    // 按行存储的一维图像
+    static int[] flatten(int[][] image) {
+        int height = image.length, width = image[0].length;
+        int[] result = new int[height * width];
+        for (int h = 0; h < height; h++) {
+            System.arraycopy(image[h], 0, result, h * width, width);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+package seamcarving.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 标量和向量化的内核在单个线程上逐行处理整幅图像，两种实现的时间之比就是各内核的加速比
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KernelBenchmark {
+    @Param({ "640x480", "1920x1080", "3840x2160" })
+    public String size;
+
+    @Param({ "scalar", "vector" })
+    public String impl;
+
+    private Kernels.Pixel pixel;
+    private int width, height;
+    private int[] image, gray, energy, map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Kernels kernels = Kernels.load();
+        this.pixel = kernels.pixel(this.impl);
+        int[][] rows = Images.synthetic(this.size, 5);
+        this.height = rows.length;
+        this.width = rows[0].length;
+        this.image = Images.flatten(rows);
+        this.gray = kernels.grayscale(this.image, this.width, this.width, this.height);
+        this.energy = kernels.sobel(this.gray, this.width, this.width, this.height);
+        this.map = new int[this.image.length];
+    }
+
+    @Benchmark
+    public int[] grayscale() {
+        for (int h = 0; h < this.height; h++) {
+            this.pixel.grayscale(this.image, this.map, h * this.width, (h + 1) * this.width);
+        }
+        return this.map;
+    }
+
+    @Benchmark
+    public int[] sobel() {
+        for (int h = 0; h < this.height; h++) {
+            this.pixel.sobel(this.gray, this.map, this.width, this.width, this.height, h);
+        }
+        return this.map;
+    }
+
+    // 从底部向上计算累计能量的内部列，与SeamCarverBackward.energyRow相同，两端的列不计入
+    @Benchmark
+    public int[] minRow() {
+        int last = (this.height - 1) * this.width;
+        int[] below = new int[this.width], row = new int[this.width];
+        System.arraycopy(this.energy, last, below, 0, this.width);
+        for (int h = this.height - 2; h >= 0; h--) {
+            this.pixel.minRow(this.energy, h * this.width, below, row, 1, this.width - 1);
+            int[] temp = below;
+            below = row;
+            row = temp;
+        }
+        return below;
+    }
+}
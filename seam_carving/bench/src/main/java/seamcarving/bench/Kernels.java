@@ -0,0 +1,55 @@
+package seamcarving.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+// 被测的库代码都在默认包中，而JMH要求基准测试类有包名，有包名的类又不能引用默认包
+// 因此由默认包中的BenchmarkKernels实现这个接口，基准测试只在初始化时通过反射创建一次
+public interface Kernels {
+    // 一个carver，方向和能量类型在创建时确定，不更新显示用的图像
+    interface Carver {
+        void setBatchSize(int batchSize);
+
+        void energyMap();
+
+        int remove(int count);
+
+        int add(int count);
+
+        boolean add();
+
+        int getWidth();
+    }
+
+    // PixelKernels的一种实现，每次调用处理一行
+    interface Pixel {
+        void grayscale(int[] image, int[] gray, int from, int to);
+
+        void sobel(int[] gray, int[] energy, int stride, int width, int height, int y);
+
+        void minRow(int[] energy, int offset, int[] below, int[] row, int from, int to);
+    }
+
+    int[] grayscale(int[] image, int stride, int width, int height);
+
+    int[] sobel(int[] gray, int stride, int width, int height);
+
+    int[][] toImage(int[] image, int width, int height, int stride, boolean horizontal);
+
+    int[][] readImage(File file);
+
+    void writeImage(int[][] image, File file) throws IOException;
+
+    Carver carver(int[][] image, String type, boolean horizontal);
+
+    // impl为scalar或vector，向量化的实现不可用时抛出异常
+    Pixel pixel(String impl);
+
+    static Kernels load() {
+        try {
+            return (Kernels) Class.forName("BenchmarkKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkKernels is not on the classpath", e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package seamcarving.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// benchmarks.jar的入口：没有指定-prof时默认加上GC分析器，同时报告每次操作分配的字节数和分配速率
+public class Main {
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-prof") && !options.contains("-h") && !options.contains("-l")) {
+            options.add(0, "-prof");
+            options.add(1, "gc");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
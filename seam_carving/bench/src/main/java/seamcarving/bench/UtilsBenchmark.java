@@ -0,0 +1,82 @@
+package seamcarving.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Utils中逐像素处理整幅图像的函数，每次操作处理一整幅图像
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+    @Param({ "640x480", "1920x1080", "3840x2160" })
+    public String size;
+
+    private Kernels kernels;
+    private int width, height;
+    private int[][] rows;
+    private int[] image, gray;
+    private File input, output;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.kernels = Kernels.load();
+        this.rows = Images.synthetic(this.size, 1);
+        this.height = this.rows.length;
+        this.width = this.rows[0].length;
+        this.image = Images.flatten(this.rows);
+        this.gray = this.kernels.grayscale(this.image, this.width, this.width, this.height);
+        this.input = File.createTempFile("bench", ".png");
+        this.output = File.createTempFile("bench", ".png");
+        this.kernels.writeImage(this.rows, this.input);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.input.delete();
+        this.output.delete();
+    }
+
+    @Benchmark
+    public int[] grayscale() {
+        return this.kernels.grayscale(this.image, this.width, this.width, this.height);
+    }
+
+    @Benchmark
+    public int[] sobel() {
+        return this.kernels.sobel(this.gray, this.width, this.width, this.height);
+    }
+
+    // 水平carver的图像转回原来的方向，代替已经去掉的transpose
+    @Benchmark
+    public int[][] rotate() {
+        return this.kernels.toImage(this.image, this.width, this.height, this.width, true);
+    }
+
+    @Benchmark
+    public int[][] readImage() {
+        return this.kernels.readImage(this.input);
+    }
+
+    @Benchmark
+    public void writeImage() throws IOException {
+        this.kernels.writeImage(this.rows, this.output);
+    }
+}
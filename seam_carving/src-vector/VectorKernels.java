@@ -0,0 +1,69 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// 用jdk.incubator.vector实现的PixelKernels，结果与ScalarKernels完全相同
+// 单独编译为vector模块，运行时需要--add-modules jdk.incubator.vector，由Utils通过反射加载
+public class VectorKernels implements PixelKernels {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private final PixelKernels scalar = new ScalarKernels(); // 处理不足一个向量的尾部
+
+    public VectorKernels() {
+        // 向量只有一两个lane时没有收益，退回标量实现
+        if (SPECIES.length() < 4)
+            throw new UnsupportedOperationException("Vector species too narrow: " + SPECIES);
+    }
+
+    public void grayscale(int[] image, int[] gray, int from, int to) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            IntVector pixel = IntVector.fromArray(SPECIES, image, i);
+            IntVector r = pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+            IntVector g = pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+            IntVector b = pixel.and(0xFF);
+            // (3r + 4g + b) / 8，各项都非负，除以8就是右移3位
+            r.mul(3).add(g.lanewise(VectorOperators.LSHL, 2)).add(b)
+                    .lanewise(VectorOperators.ASHR, 3).intoArray(gray, i);
+        }
+        this.scalar.grayscale(image, gray, i, to);
+    }
+
+    // 内部的列一次处理一个向量，左右两列需要取最近的边缘像素，仍然逐个计算
+    public void sobel(int[] gray, int[] energy, int stride, int width, int height, int y) {
+        int up = (y > 0 ? y - 1 : 0) * stride, mid = y * stride;
+        int down = (y < height - 1 ? y + 1 : height - 1) * stride;
+        energy[mid] = Utils.sobel(gray, stride, width, height, 0, y);
+        int x = 1;
+        // 最后一个向量读到第bound列，不超过width - 1
+        for (int bound = 1 + SPECIES.loopBound(Math.max(width - 2, 0)); x < bound; x += SPECIES.length()) {
+            IntVector ul = IntVector.fromArray(SPECIES, gray, up + x - 1);
+            IntVector ux = IntVector.fromArray(SPECIES, gray, up + x);
+            IntVector ur = IntVector.fromArray(SPECIES, gray, up + x + 1);
+            IntVector ml = IntVector.fromArray(SPECIES, gray, mid + x - 1);
+            IntVector mr = IntVector.fromArray(SPECIES, gray, mid + x + 1);
+            IntVector dl = IntVector.fromArray(SPECIES, gray, down + x - 1);
+            IntVector dx = IntVector.fromArray(SPECIES, gray, down + x);
+            IntVector dr = IntVector.fromArray(SPECIES, gray, down + x + 1);
+            IntVector sx = ul.sub(ur).add(ml.sub(mr).lanewise(VectorOperators.LSHL, 1)).add(dl.sub(dr));
+            IntVector sy = ul.add(ux.lanewise(VectorOperators.LSHL, 1)).add(ur)
+                    .sub(dl.add(dx.lanewise(VectorOperators.LSHL, 1)).add(dr));
+            sx.abs().add(sy.abs()).intoArray(energy, mid + x);
+        }
+        for (; x < width; x++) {
+            energy[mid + x] = Utils.sobel(gray, stride, width, height, x, y);
+        }
+    }
+
+    // 下一行错开一列读取三次，左、中、右三个相邻列的最小值就是三个向量逐lane的最小值
+    public void minRow(int[] energy, int offset, int[] below, int[] row, int from, int to) {
+        int w = from;
+        for (int bound = from + SPECIES.loopBound(to - from); w < bound; w += SPECIES.length()) {
+            IntVector left = IntVector.fromArray(SPECIES, below, w - 1);
+            IntVector center = IntVector.fromArray(SPECIES, below, w);
+            IntVector right = IntVector.fromArray(SPECIES, below, w + 1);
+            IntVector.fromArray(SPECIES, energy, offset + w).add(left.min(center).min(right)).intoArray(row, w);
+        }
+        this.scalar.minRow(energy, offset, below, row, w, to);
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.Random;
+
+// 性能测试：使用随机生成的图像比较不同的carve方式，不依赖任何图像文件
+public class Benchmark {
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1200;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 800;
+        int seams = args.length > 2 ? Integer.parseInt(args[2]) : width / 2;
+        System.out.println("Image: " + width + " x " + height + ", removing " + seams + " seams, "
+                + Utils.getThreads() + " threads");
+
+        batchRemoval(width, height, seams);
+        pyramid(width, height, seams);
+        retarget(width, height, seams);
+    }
+
+    // 逐个删除与批量删除的耗时和被删除像素的总能量（越低越好）
+    private static void batchRemoval(int width, int height, int seams) {
+        System.out.println("\nBatch removal (backward energy)");
+        System.out.printf("%10s %12s %12s %16s%n", "batch", "time (ms)", "seams/s", "removed energy");
+        for (int batch : new int[] { 1, 4, 16, 64 }) {
+            SeamCarverBackward carver = new SeamCarverBackward(synthetic(width, height, 42));
+            carver.setUpdate(false);
+            carver.setBatchSize(batch);
+            long start = System.nanoTime();
+            int removed = carver.remove(seams, false, 0);
+            double ms = (System.nanoTime() - start) / 1e6;
+            System.out.printf("%10d %12.1f %12.1f %16d%n", batch, ms, removed * 1000 / ms, removedEnergy(carver));
+        }
+    }
+
+    // 金字塔搜索与完整动态规划的耗时，以及每条seam的能量相对于当时最优seam的平均比例
+    private static void pyramid(int width, int height, int seams) {
+        System.out.println("\nPyramid search vs exact DP");
+        System.out.printf("%18s %12s %12s %16s%n", "carver", "time (ms)", "seams/s", "removed energy");
+        SeamCarverBackward full = new SeamCarverBackward(synthetic(width, height, 42));
+        full.setIncremental(false);
+        SeamCarverBase[] carvers = {
+                full,
+                new SeamCarverBackward(synthetic(width, height, 42)),
+                new SeamCarverPyramid(synthetic(width, height, 42))
+        };
+        String[] names = { "backward (full)", "backward (incr.)", "pyramid" };
+        for (int i = 0; i < carvers.length; i++) {
+            SeamCarverBase carver = carvers[i];
+            carver.setUpdate(false);
+            long start = System.nanoTime();
+            int removed = ((SeamCarver) carver).remove(seams, false, 0);
+            double ms = (System.nanoTime() - start) / 1e6;
+            System.out.printf("%18s %12.1f %12.1f %16d%n", names[i], ms, removed * 1000 / ms, removedEnergy(carver));
+        }
+
+        SeamCarverPyramid carver = new SeamCarverPyramid(synthetic(width, height, 42));
+        carver.setUpdate(false);
+        double ratio = 0;
+        int steps = Utils.min(seams, 100);
+        for (int i = 0; i < steps; i++) {
+            long optimal = optimalSeam(carver);
+            carver.remove(false, 0);
+            long found = 0;
+            for (int value : carver.energyValues.peek()) {
+                found += value;
+            }
+            ratio += (double) (found + 1) / (optimal + 1);
+        }
+        System.out.printf("pyramid seam energy / optimal seam energy: %.3f (mean of first %d seams)%n",
+                ratio / steps, steps);
+    }
+
+    // 同时缩小宽和高：两个carver依次处理与SeamCarver2D在同一份像素上贪心交替
+    private static void retarget(int width, int height, int seams) {
+        int targetWidth = width - seams, targetHeight = height - seams * height / width;
+        System.out.println("\n2D retargeting to " + targetWidth + " x " + targetHeight);
+        System.out.printf("%18s %12s %16s%n", "method", "time (ms)", "removed energy");
+
+        long start = System.nanoTime();
+        SeamCarverFactory factory = new SeamCarverFactory();
+        SeamCarverBase vertical = (SeamCarverBase) factory.create(synthetic(width, height, 42), false,
+                EnergyType.BACKWARD);
+        vertical.setUpdate(false);
+        ((SeamCarver) vertical).remove(width - targetWidth, false, 0);
+        int[][] image = vertical.toImage();
+        SeamCarverBase horizontal = (SeamCarverBase) factory.create(image, true, EnergyType.BACKWARD);
+        horizontal.setUpdate(false);
+        ((SeamCarver) horizontal).remove(height - targetHeight, false, 0);
+        double ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%18s %12.1f %16d%n", "vertical first", ms,
+                removedEnergy(vertical) + removedEnergy(horizontal));
+
+        start = System.nanoTime();
+        SeamCarver2D carver = new SeamCarver2D(synthetic(width, height, 42));
+        carver.retarget(targetWidth, targetHeight);
+        ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%18s %12.1f %16d%n", "greedy 2D", ms, carver.getRemovedEnergy());
+    }
+
+    // 用完整的动态规划求出当前能量图像中最小的seam能量
+    static long optimalSeam(SeamCarverBase carver) {
+        long[] below = new long[carver.width], row = new long[carver.width];
+        for (int h = carver.height - 1; h >= 0; h--) {
+            for (int w = 0; w < carver.width; w++) {
+                long min = 0;
+                if (h < carver.height - 1) {
+                    min = below[w];
+                    if (w > 0)
+                        min = Math.min(min, below[w - 1]);
+                    if (w < carver.width - 1)
+                        min = Math.min(min, below[w + 1]);
+                }
+                row[w] = carver.energy[h * carver.maxWidth + w] + min;
+            }
+            long[] temp = below;
+            below = row;
+            row = temp;
+        }
+        long min = Long.MAX_VALUE;
+        for (int w = 0; w < carver.width; w++) {
+            min = Math.min(min, below[w]);
+        }
+        return min;
+    }
+
+    // 所有被删除seam上的能量之和
+    static long removedEnergy(SeamCarverBase carver) {
+        long total = 0;
+        for (int[] values : carver.energyValues) {
+            for (int value : values) {
+                total += value;
+            }
+        }
+        return total;
+    }
+
+    // 生成带有平滑渐变、条纹和噪声的测试图像
+    static int[][] synthetic(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[][] image = new int[height][width];
+        for (int h = 0; h < height; h++) {
+            for (int w = 0; w < width; w++) {
+                int r = (int) (128 + 100 * Math.sin(w * 0.013) * Math.cos(h * 0.021));
+                int g = ((w / 40 + h / 40) & 1) == 0 ? 200 : 60;
+                int b = (w * 255 / width + random.nextInt(24)) & 0xFF;
+                image[h][w] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return image;
+    }
+}
@@ -1,11 +1,47 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import java.awt.Dimension;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 // Console类使用户能够通过控制台输入进行交互，来指定如何修改图像
+// 带参数运行时不再交互，批量处理给定的图像和目录，见batch
 
 public class Console {
+    public static final String USAGE = "Usage: Console [options] <image or directory>...\n" +
+            "  --width <n|n%>       target width\n" +
+            "  --height <n|n%>      target height\n" +
+            "  --energy <type>      backward (default), forward or pyramid\n" +
+            "  --function <name>    energy of backward and pyramid: luma, gradient, sobel (default), sobel_l2\n" +
+            "                       or entropy, from cheapest to costliest\n" +
+            "  --order <vh|hv|2d>   vh (default, also auto)/hv carve all vertical or horizontal seams first,\n" +
+            "                       2d interleaves both directions on one image, only shrinking with backward energy\n" +
+            "  --out <dir>          output directory (default Carved)\n" +
+            "  --jobs <n>           images carved concurrently (default: number of processors)\n" +
+            "  --memory <MB>        memory shared by concurrent images (default: 3/4 of the heap)\n" +
+            "  --batch <n>          seams removed per energy map (default 1)\n" +
+            "  --out-of-core <mode> auto (default) carves images larger than --memory in memory-mapped strips\n" +
+            "                       when only the width shrinks with backward energy, always or never\n" +
+            "  --stats              print per-phase timings and per-seam latency of the in-memory carvers\n" +
+            "Exit codes: 0 all images carved, 1 some images failed, 2 invalid arguments";
+
     public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(batch(args));
+        }
         System.out.println("Welcome to Karve!\n");
         Scanner console = new Scanner(System.in);
         System.out.println("Enter Image File Name: ");
@@ -42,12 +78,315 @@ public class Console {
         System.out.println(numCarved + " seams carved from " + filename + ".");
         System.out.println("Output file name: ");
         String output = console.next();
-        Utils.writeImage(carver.getImage(), carver.getWidth(), carver.getHeight(), horizontal, output);
+        // 导出显示用的图像，其中突出显示了最后一个seam，步长为显示图像的宽度
+        carver.updateImage(showSeams, highlightColor);
+        int stride = carver.getBufferedImage().getWidth();
+        int[][] image = Utils.toImage(carver.getImage(), carver.getWidth(), carver.getHeight(), stride, horizontal);
+        try {
+            Utils.writeImage(image, new File(output));
+        } catch (IOException ignored) {
+        }
         System.out.println("Carved image saved as " + output + ".");
 
         console.close();
     }
 
+    // 非交互的批处理，返回退出码：0全部成功，1有图像失败，2参数错误
+    public static int batch(String[] args) {
+        List<File> inputs = new ArrayList<>();
+        String width = null, height = null, order = "auto";
+        EnergyType type = EnergyType.BACKWARD;
+        EnergyFunction function = StandardEnergy.SOBEL;
+        File output = new File("Carved");
+        int jobs = Runtime.getRuntime().availableProcessors();
+        long memory = Runtime.getRuntime().maxMemory() / 4 * 3 >> 20;
+        int batchSize = 1;
+        String outOfCore = "auto";
+        SeamStats stats = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    collect(new File(arg), inputs);
+                    continue;
+                }
+                if (arg.equals("--stats")) {
+                    stats = new SeamStats();
+                    continue;
+                }
+                if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                String value = args[++i];
+                switch (arg) {
+                    case "--width":
+                        width = value;
+                        resolve(width, 100);
+                        break;
+                    case "--height":
+                        height = value;
+                        resolve(height, 100);
+                        break;
+                    case "--energy":
+                        type = EnergyType.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--function":
+                        function = StandardEnergy.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_'));
+                        break;
+                    case "--order":
+                        if (!value.equals("auto") && !value.equals("vh") && !value.equals("hv") &&
+                                !value.equals("2d"))
+                            throw new IllegalArgumentException("Invalid order: " + value);
+                        order = value;
+                        break;
+                    case "--out":
+                        output = new File(value);
+                        break;
+                    case "--jobs":
+                        jobs = Integer.parseInt(value);
+                        break;
+                    case "--memory":
+                        memory = Long.parseLong(value);
+                        break;
+                    case "--batch":
+                        batchSize = Integer.parseInt(value);
+                        if (batchSize < 1)
+                            throw new IllegalArgumentException("Invalid batch size: " + value);
+                        break;
+                    case "--out-of-core":
+                        if (!value.equals("auto") && !value.equals("always") && !value.equals("never"))
+                            throw new IllegalArgumentException("Invalid out-of-core mode: " + value);
+                        outOfCore = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (width == null && height == null)
+                throw new IllegalArgumentException("No target size given");
+            if (inputs.isEmpty())
+                throw new IllegalArgumentException("No input images");
+            if (jobs < 1 || memory < 1)
+                throw new IllegalArgumentException("Invalid jobs or memory: " + jobs + ", " + memory);
+            if (!output.isDirectory() && !output.mkdirs())
+                throw new IllegalArgumentException("Cannot create output directory: " + output);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        // 每个许可代表1MB，估计的内存不够时等待其他图像完成，超过总量的大图像单独运行
+        int budget = (int) Math.min(memory, Integer.MAX_VALUE);
+        Semaphore permits = new Semaphore(budget, true);
+        SeamCarverFactory factory = new SeamCarverFactory();
+        factory.setEnergyFunction(function);
+        AtomicLong pixels = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        List<Future<Boolean>> results = new ArrayList<>();
+        SeamStats s = stats;
+        long start = System.currentTimeMillis();
+        for (File input : inputs) {
+            File target = new File(output, name(input) + ".png");
+            String w = width, h = height, o = order, mode = outOfCore;
+            EnergyType t = type;
+            EnergyFunction f = function;
+            int b = batchSize;
+            long total = memory << 20;
+            results.add(pool.submit(() -> {
+                long begin = System.currentTimeMillis();
+                try {
+                    Dimension size = imageSize(input);
+                    int tw = resolve(w, size.width), th = resolve(h, size.height);
+                    long bytes = memory(size, tw, th, t);
+                    // 只缩小宽度时可以在映射的文件中分段carve，堆上只需要几行的空间
+                    boolean strips = mode.equals("always") ||
+                            mode.equals("auto") && bytes > total && streamable(size, tw, th, t, f);
+                    if (strips && !streamable(size, tw, th, t, f))
+                        throw new IllegalArgumentException("Out-of-core carving only removes vertical seams " +
+                                "with backward Sobel energy");
+                    if (strips)
+                        bytes = SeamCarverStrip.heap(size.width, size.height);
+                    int needed = (int) Math.max(Math.min((bytes >> 20) + 1, budget), 1);
+                    permits.acquire(needed);
+                    try {
+                        Dimension carved = strips ? carve(input, target, tw, b)
+                                : carve(factory, input, target, w, h, o, t, b, s);
+                        pixels.addAndGet((long) size.width * size.height);
+                        System.out.println(input + ": " + size.width + "x" + size.height + " -> " +
+                                carved.width + "x" + carved.height + " in " +
+                                (System.currentTimeMillis() - begin) + " ms");
+                        return true;
+                    } finally {
+                        permits.release(needed);
+                    }
+                } catch (Exception | OutOfMemoryError e) {
+                    System.err.println(input + ": failed (" + e + ")");
+                    return false;
+                }
+            }));
+        }
+        pool.shutdown();
+
+        int failed = 0;
+        for (Future<Boolean> result : results) {
+            try {
+                if (!result.get())
+                    failed++;
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+        int carved = inputs.size() - failed;
+        System.out.println(String.format(Locale.ROOT,
+                "%d images carved, %d failed in %d ms (%.2f images/s, %.2f MP/s)",
+                carved, failed, elapsed, carved * 1000.0 / elapsed, pixels.get() / 1000.0 / elapsed));
+        if (stats != null)
+            System.out.println(stats.snapshot());
+        return failed == 0 ? 0 : 1;
+    }
+
+    // 将文件或目录（包括子目录）中的图像加入列表
+    private static void collect(File file, List<File> inputs) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files == null)
+                return;
+            Arrays.sort(files);
+            for (File child : files) {
+                collect(child, inputs);
+            }
+        } else if (file.isFile()) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg") ||
+                    name.endsWith(".gif") || name.endsWith(".bmp"))
+                inputs.add(file);
+        } else {
+            throw new IllegalArgumentException(file + " was not found");
+        }
+    }
+
+    // 解析目标大小，可以是像素数或者原始大小的百分比，没有给出时保持原始大小
+    private static int resolve(String spec, int size) {
+        if (spec == null)
+            return size;
+        int target = spec.endsWith("%")
+                ? (int) Math.round(size * Double.parseDouble(spec.substring(0, spec.length() - 1)) / 100)
+                : Integer.parseInt(spec);
+        if (target < 1)
+            throw new IllegalArgumentException("Invalid target size: " + spec);
+        return target;
+    }
+
+    // 文件名去掉扩展名
+    private static String name(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    // 只读取图像的头部得到大小，用于在解码之前估计内存
+    private static Dimension imageSize(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext())
+                throw new IOException("Unsupported image format");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // 估计carve一幅图像占用的内存：输入和输出的图像，以及容量扩大到目标大小的carver
+    private static long memory(Dimension size, int width, int height, EnergyType type) {
+        int w = Utils.max(size.width, width), h = Utils.max(size.height, height);
+        return 4L * size.width * size.height + 4L * width * height + SeamCarverFactory.estimate(w, h, type);
+    }
+
+    // 分段carve只支持用反向的Sobel能量删除竖直seam
+    private static boolean streamable(Dimension size, int width, int height, EnergyType type,
+            EnergyFunction function) {
+        return type == EnergyType.BACKWARD && function == StandardEnergy.SOBEL && height == size.height &&
+                width <= size.width;
+    }
+
+    // 在映射的文件中删除竖直seam直到宽度为width，写入target，返回结果的大小
+    private static Dimension carve(File input, File target, int width, int batchSize) throws IOException {
+        try (SeamCarverStrip carver = SeamCarverStrip.read(input, null)) {
+            carver.setBatchSize(batchSize);
+            carver.remove(carver.getWidth() - width);
+            carver.write(target);
+            return new Dimension(carver.getWidth(), carver.getHeight());
+        }
+    }
+
+    // 批处理的每个线程复用一个SeamCarver2D的各平面，线程池结束后随线程一起释放
+    private static final ThreadLocal<SeamCarver2D> CARVERS = new ThreadLocal<>();
+
+    // 按方向逐次carve时每个线程复用竖直和水平两个carver的各平面，下标1为水平
+    private static final ThreadLocal<SeamCarverBase[]> PASSES = ThreadLocal.withInitial(() -> new SeamCarverBase[2]);
+
+    // 按order依次调整宽度和高度，写入target，返回结果的大小，stats不为null时累计各carver的计时
+    private static Dimension carve(SeamCarverFactory factory, File input, File target, String width,
+            String height, String order, EnergyType type, int batchSize, SeamStats stats) throws IOException {
+        int[][] image = Utils.readImage(input);
+        if (image == null)
+            throw new IOException("Cannot read image");
+        int targetWidth = resolve(width, image[0].length), targetHeight = resolve(height, image.length);
+        if (order.equals("2d")) {
+            // 在同一份像素上交替删除两个方向的seam
+            if (type != EnergyType.BACKWARD || targetWidth > image[0].length || targetHeight > image.length)
+                throw new IllegalArgumentException("Order 2d only shrinks with backward energy");
+            SeamCarver2D carver = CARVERS.get();
+            if (carver == null || carver.getEnergyFunction() != factory.getEnergyFunction()) {
+                carver = new SeamCarver2D(image, factory.getEnergyFunction());
+                CARVERS.set(carver);
+            } else {
+                carver.load(image);
+            }
+            carver.setBatchSize(batchSize);
+            carver.setListener(stats);
+            carver.retarget(targetWidth, targetHeight);
+            image = carver.toImage();
+            order = "";
+        } else if (order.equals("auto")) {
+            // 带状更新的两个carver比SeamCarver2D每个seam都完整计算能量图更快
+            order = "vh";
+        }
+        for (char pass : order.toCharArray()) {
+            boolean horizontal = pass == 'h';
+            image = carve(factory, image, horizontal, horizontal ? targetHeight : targetWidth, type, batchSize,
+                    stats);
+        }
+        Utils.writeImage(image, target);
+        return new Dimension(image[0].length, image.length);
+    }
+
+    // 用一个方向的seam把图像调整到target，水平seam改变高度，竖直seam改变宽度
+    private static int[][] carve(SeamCarverFactory factory, int[][] image, boolean horizontal, int target,
+            EnergyType type, int batchSize, SeamStats stats) {
+        int size = horizontal ? image.length : image[0].length;
+        if (target == size)
+            return image;
+        if (target > size * 2)
+            throw new IllegalArgumentException("Target size " + target + " is more than twice " + size);
+        SeamCarverBase[] carvers = PASSES.get();
+        int slot = horizontal ? 1 : 0;
+        SeamCarverBase carver = factory.reuse(carvers[slot], image, horizontal, type);
+        carvers[slot] = carver;
+        carver.setUpdate(false);
+        carver.setBatchSize(batchSize);
+        carver.setListener(stats);
+        int count = target < size ? carver.remove(size - target, false, 0) : carver.add(target - size, false, 0);
+        if (count != Math.abs(target - size))
+            throw new IllegalStateException("Only " + count + " of " + Math.abs(target - size) + " seams carved");
+        return carver.toImage();
+    }
+
     public static char getUserData(Scanner console, String prompt, String valid) {
         System.out.println(prompt);
         String data = console.next().toLowerCase(Locale.ROOT);
@@ -0,0 +1,30 @@
+// 由灰度图像计算每个像素的反向能量，carver在删除或插入seam之后只重新计算seam附近的部分
+// 约定：(x, y)的能量只取决于灰度图像中以(x, y)为中心、半径为getRadius()的正方形窗口，越界的像素取最近的边缘像素
+// 因此删除或插入seam之后，只有与seam的距离不超过getRadius()的像素需要重新计算
+public interface EnergyFunction {
+    // 名字，用于命令行参数和缓存文件名，枚举实现时就是枚举名
+    String name();
+
+    int getRadius();
+
+    // 按行存储的灰度图像中(x, y)处的能量
+    int energy(int[] gray, int stride, int width, int height, int x, int y);
+
+    // 重新计算第y行[from, to)列的能量，默认逐个像素计算
+    default void update(int[] gray, int[] energy, int stride, int width, int height, int y, int from, int to) {
+        for (int x = from, i = y * stride + from; x < to; x++, i++) {
+            energy[i] = this.energy(gray, stride, width, height, x, y);
+        }
+    }
+
+    // 计算整幅图像的能量，结果与gray的布局相同
+    default int[] compute(int[] gray, int stride, int width, int height) {
+        int[] energy = new int[gray.length];
+        Utils.parallel(height, width, (from, to) -> {
+            for (int h = from; h < to; h++) {
+                this.update(gray, energy, stride, width, height, h, 0, width);
+            }
+        });
+        return energy;
+    }
+}
@@ -1,4 +1,3 @@
-import javax.imageio.ImageIO;
 import javax.swing.*;
 
 import java.awt.*;
@@ -7,12 +6,14 @@ import java.awt.dnd.DnDConstants;
 import java.awt.dnd.DropTarget;
 import java.awt.dnd.DropTargetDropEvent;
 import java.awt.event.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
-import java.util.Random;
 
 public class GUI {
     public static volatile int SLIDER = 1000;
@@ -20,7 +21,10 @@ public class GUI {
     public static String ICONS_FOLDER = "Icons";
     public static final int ICON_SIZE = 30;
     public static final EnergyType ENERGY_TYPE = EnergyType.BACKWARD; // Seam Carving的能量类型：前进或后退
+    public static final EnergyFunction ENERGY_FUNCTION = StandardEnergy.SOBEL; // 反向能量的计算方式
     public static final boolean CROP_SNAPSHOT = false;
+    public static final int RECORD_QUEUE = 64; // 最多等待编码的快照数
+    public static final SnapshotRecorder.Policy RECORD_POLICY = SnapshotRecorder.Policy.DROP; // 编码跟不上时丢弃快照
 
     private int brushWidth; // 确定用于标记优先级掩码的画笔的宽度
     private boolean carving;
@@ -32,16 +36,23 @@ public class GUI {
     private boolean horizontal; // 水平（True）或垂直（False）Seam Carver
     private boolean isAdd = true;
     private int count; // 用于保存快照的计数器
+    private int recordings; // 用于保存记录的计数器
     private int scaleW, scaleH; // 显示图像的缩放比例
     private final JLabel displayImage; // 用于显示图像的JLabel
     private final SeamCarver[] carver; // 用于存储Seam Carver的数组
     private int idx; // 用于指示当前Seam Carver的索引
+    private int[][] source; // 另一个方向的carver还没有创建时保留的原图
     private final SeamCarverFactory factory; // 用于创建Seam Carver
-    private BufferedImage bufferedImage; // 用于显示图像的缓冲图像
+    private final SnapshotRecorder recorder; // 在后台保存快照
+    private volatile SeamRecording seamRecording; // 正在进行的记录，只保存每一步的seam
+    private volatile BufferedImage frame; // 当前显示的图像，直接使用carver的图像而不拷贝
 
     public GUI() {
         this.carver = new SeamCarver[] { null, null };
         this.factory = new SeamCarverFactory();
+        this.factory.setEnergyFunction(ENERGY_FUNCTION);
+        this.recorder = new SnapshotRecorder(RECORD_QUEUE, RECORD_POLICY,
+                Utils.max(Runtime.getRuntime().availableProcessors() / 2, 1));
         this.update = true;
         this.grayscale = false;
 
@@ -62,7 +73,13 @@ public class GUI {
 
         // 添加显示图像，显示carving的图像
         this.displayImage = new JLabel(icon("dragdrop.png", ICON_SIZE / 4),
-                JLabel.CENTER);
+                JLabel.CENTER) {
+            @Override
+            protected void paintComponent(Graphics g) {
+                if (!paintFrame(g))
+                    super.paintComponent(g);
+            }
+        };
         panel.add(this.displayImage);
 
         // 添加展示dragdrop图像的区域
@@ -115,9 +132,14 @@ public class GUI {
         horizontalCheckBox.addItemListener(e -> {
             this.horizontal = !this.horizontal;
             this.idx = this.horizontal ? 1 : 0;
-            this.clearBufferedImage();
-            if (this.update)
-                this.updateDisplayImage();
+            if (this.carver[this.idx] == null) {
+                // 第一次切换到这个方向时才创建carver，之后不再需要原图
+                this.carver[this.idx] = this.factory.create(this.source, this.horizontal, ENERGY_TYPE);
+                this.source = null;
+            }
+            this.updateDisplayImage(true);
+            if (this.recording)
+                this.startRecording(); // 换成另一个carver，开始新的记录
             SeamCarver carver = this.carver[this.idx];
             frame.setTitle("Seam-Carving - " + carver.getWidth(isAdd) + " x " +
                     carver.getHeight());
@@ -127,7 +149,15 @@ public class GUI {
         JCheckBox recordingCheckBox = new JCheckBox("Recording");
         recordingCheckBox.setOpaque(false);
         recordingCheckBox.setFont(font);
-        recordingCheckBox.addItemListener(e -> this.recording = !this.recording);
+        recordingCheckBox.addItemListener(e -> {
+            this.recording = !this.recording;
+            if (this.recording) {
+                this.startRecording();
+            } else {
+                // 停止记录时报告记录的步数
+                recordingCheckBox.setToolTipText("Steps: " + this.stopRecording());
+            }
+        });
         checkBoxPanel.add(recordingCheckBox);
         // 灰度
         JCheckBox grayscaleCheckBox = new JCheckBox("Grayscale");
@@ -135,9 +165,7 @@ public class GUI {
         grayscaleCheckBox.setFont(font);
         grayscaleCheckBox.addItemListener(e -> {
             this.grayscale = !this.grayscale;
-            this.clearBufferedImage();
-            if (this.update)
-                this.updateDisplayImage();
+            this.updateDisplayImage(true);
             frame.setTitle("Seam-Carving - " + "grayscale");
         });
         checkBoxPanel.add(grayscaleCheckBox);
@@ -218,10 +246,10 @@ public class GUI {
             SeamCarver carver = this.carver[this.idx];
             boolean valid = carver.add(this.highlight, SEAM_COLOR);
             if (valid) {
-                if (this.recording)
-                    captureSnapshot();
                 if (this.update)
                     this.updateDisplayImage();
+                if (this.recording)
+                    this.recordStep(carver, true);
                 frame.setTitle("Seam-Carving - " + carver.getWidth(isAdd) + " x " + carver.getHeight());
             }
         });
@@ -231,17 +259,18 @@ public class GUI {
             SeamCarver carver = this.carver[this.idx];
             boolean valid = carver.remove(this.highlight, SEAM_COLOR);
             if (valid) {
-                if (this.recording)
-                    captureSnapshot();
                 if (this.update)
                     this.updateDisplayImage();
+                if (this.recording)
+                    this.recordStep(carver, false);
                 frame.setTitle("Seam-Carving - " + carver.getWidth(isAdd) + " x " + carver.getHeight());
             }
         });
         // 单击“快照”按钮时
         snapshotButton.addActionListener(e -> {
-            if (!this.recording)
-                captureSnapshot();
+            captureSnapshot();
+            snapshotButton.setToolTipText("Encoded: " + this.recorder.getEncoded() +
+                    ", Dropped: " + this.recorder.getDropped());
         });
         buttonPanel.add(playButton);
         buttonPanel.add(addButton);
@@ -262,6 +291,14 @@ public class GUI {
         frame.pack();
 
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // 退出前写完队列中剩余的快照并结束记录
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                recorder.close();
+                stopRecording();
+            }
+        });
         frame.setLocationRelativeTo(null);
         frame.setResizable(false);
         frame.setVisible(true);
@@ -272,10 +309,10 @@ public class GUI {
         SeamCarver carver = this.carver[this.idx];
         isAdd = true;
         while (this.carving && carver.add(this.highlight, SEAM_COLOR)) {
-            if (this.recording)
-                captureSnapshot();
             if (this.update)
                 this.updateDisplayImage();
+            if (this.recording)
+                this.recordStep(carver, true);
             frame.setTitle("Seam-Carving - " + carver.getWidth(isAdd) + " x " + carver.getHeight());
             Utils.delay(SLIDER - slider.getValue());
         }
@@ -286,41 +323,65 @@ public class GUI {
         SeamCarver carver = this.carver[this.idx];
         isAdd = false;
         while (this.carving && carver.remove(this.highlight, SEAM_COLOR)) {
-            if (this.recording)
-                captureSnapshot();
             if (this.update)
                 this.updateDisplayImage();
+            if (this.recording)
+                this.recordStep(carver, false);
             frame.setTitle("Seam-Carving - " + carver.getWidth(isAdd) + " x " + carver.getHeight());
             Utils.delay(SLIDER - slider.getValue());
         }
     }
 
-    // 将以一维数组表示的像素转换为二维数组
-    private int[][] convertTo2D(int[] pixels, int width, int height) {
-        int[][] result = new int[height][width];
+    // 更新显示图像，只重绘发生变化的区域
+    private void updateDisplayImage() {
+        this.updateDisplayImage(false);
+    }
 
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                result[i][j] = pixels[i * width + j];
-            }
+    // 更新显示图像，all为true时重绘整幅图像（切换carver或显示方式后）
+    private void updateDisplayImage(boolean all) {
+        SeamCarver carver = this.carver[this.idx];
+        // 灰度图像由carver与彩色图像一起维护，不需要再转换
+        this.frame = this.grayscale ? carver.getGrayImage() : carver.getBufferedImage();
+        Rectangle dirty = carver.getDirtyRegion();
+        if (all) {
+            this.displayImage.repaint();
+        } else if (!dirty.isEmpty()) {
+            Rectangle bounds = this.frameTransform().createTransformedShape(dirty).getBounds();
+            bounds.grow(1, 1);
+            this.displayImage.repaint(bounds);
         }
+    }
 
-        return result;
+    // 显示carver中图像的方向
+    private AffineTransform orientation(SeamCarver carver) {
+        return Utils.orientation(carver.isHorizontal(), carver.getHeight());
     }
 
-    // 清除缓冲图像
-    private void clearBufferedImage() {
-        for (int y = 0; y < this.bufferedImage.getHeight(); y++) {
-            for (int x = 0; x < this.bufferedImage.getWidth(); x++) {
-                this.bufferedImage.setRGB(x, y, 0xFF);
-            }
+    // 从carver的坐标到displayImage坐标的变换：先旋转，再缩放到显示大小
+    private AffineTransform frameTransform() {
+        SeamCarver carver = this.carver[this.idx];
+        int width = carver.getWidth(isAdd), height = carver.getHeight();
+        if (carver.isHorizontal()) {
+            width = carver.getHeight();
+            height = carver.getWidth(isAdd);
         }
+        AffineTransform transform = AffineTransform.getScaleInstance(
+                (double) Utils.max(this.scaleW, 1) / width,
+                (double) Utils.max(this.scaleH, 1) / height);
+        transform.concatenate(this.orientation(carver));
+        return transform;
     }
 
-    // 更新显示图像
-    private void updateDisplayImage() {
-        ImageIcon icon = this.updateBufferedImage();
-        this.displayImage.setIcon(icon);
+    // 在displayImage上绘制当前图像，还没有加载图像时返回false
+    private boolean paintFrame(Graphics g) {
+        BufferedImage frame = this.frame;
+        if (frame == null)
+            return false;
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.drawImage(frame, this.frameTransform(), null);
+        g2.dispose();
+        return true;
     }
 
     // 设置组件是否可用
@@ -350,25 +411,32 @@ public class GUI {
                         evt.dropComplete(false);
                         return;
                     }
-                    // 创建水平/竖直Seam Carver
-                    carver[0] = factory.create(image, false, ENERGY_TYPE);
-                    carver[1] = factory.create(image, true, ENERGY_TYPE);
+                    int[][] pixels = Utils.readImage(image);
+                    if (pixels == null) {
+                        evt.dropComplete(false);
+                        return;
+                    }
+                    // 只创建当前方向的Seam Carver，另一个方向在切换时再创建
+                    idx = horizontal ? 1 : 0;
+                    carver[idx] = factory.create(pixels, horizontal, ENERGY_TYPE);
+                    carver[1 - idx] = null;
+                    source = pixels;
 
-                    int width = carver[0].getWidth(isAdd);
-                    int height = carver[0].getHeight();
+                    // 显示区域按竖直carver的大小计算
+                    int width = pixels[0].length * SeamCarverBase.MAX_SCALE;
+                    int height = pixels.length;
                     brushWidth = Utils.max(Utils.min(width, height) / 120, 5);
 
-                    bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-                    bufferedImage.setAccelerationPriority(1f);
-
-                    idx = horizontal ? 1 : 0;
                     int scale = Utils.getDimensions(carver[idx].getWidth(isAdd), carver[idx].getHeight());
                     scaleW = width / scale;
                     scaleH = height / scale;
 
-                    ImageIcon icon = updateBufferedImage();
-                    displayImage.setIcon(icon);
+                    displayImage.setIcon(null);
+                    displayImage.setPreferredSize(new Dimension(Utils.max(scaleW, 1), Utils.max(scaleH, 1)));
+                    updateDisplayImage(true);
 
+                    if (recording)
+                        startRecording(); // 换了一幅图像，开始新的记录
                     setEnabled(menuPanel, true);
                     frame.pack();
                     frame.setTitle("Group22 - " + carver[idx].getWidth(isAdd) + " x " + carver[idx].getHeight());
@@ -400,130 +468,96 @@ public class GUI {
     // 添加鼠标监听器
     private void addMouseListener() {
         this.displayImage.addMouseMotionListener(new MouseAdapter() {
-            Random rand = new Random(System.currentTimeMillis());
-
             @Override
             public void mouseDragged(MouseEvent e) {
                 if (carving || !update || carver[idx] == null)
                     return;
-                float x = e.getX(), y = e.getY();
                 SeamCarver current = carver[idx];
-                int imageWidth = bufferedImage.getWidth(), imageHeight = bufferedImage.getHeight();
-                float labelStepW = (float) imageWidth / displayImage.getWidth();
-                float labelStepH = (float) imageHeight / displayImage.getHeight();
-                int cX = (int) (x * labelStepW + 0.5f);
-                int cY = (int) (y * labelStepH + 0.5f);
-                if (horizontal) {
-                    int temp1 = cX;
-                    cX = cY;
-                    cY = temp1;
-                    cY = imageWidth - cY;
-
-                    int temp2 = imageWidth;
-                    imageWidth = imageHeight;
-                    imageHeight = temp2;
+                Point2D point;
+                try {
+                    point = frameTransform().inverseTransform(e.getPoint(), null);
+                } catch (NoninvertibleTransformException ignored) {
+                    return;
                 }
-                if (cX >= imageWidth || cY >= imageHeight)
+                int cX = (int) point.getX(), cY = (int) point.getY();
+                if (cX >= current.getWidth(isAdd) || cY >= current.getHeight())
                     return;
                 boolean isLeftClick = SwingUtilities.isLeftMouseButton(e);
-                int energy = isLeftClick ? 0 : (ENERGY_TYPE == EnergyType.FORWARD ? rand.nextInt(256) : 255);
+                int energy = ENERGY_TYPE == EnergyType.FORWARD ? (isLeftClick ? -SeamCarverForward.MASK :
+                        SeamCarverForward.MASK) : (isLeftClick ? 0 : 255);
                 int color = isLeftClick ? Color.RED.getRGB() : Color.GREEN.getRGB();
                 int[] image = current.getImage();
-                int cWidth = current.getWidth(isAdd), cHeight = current.getHeight();
+                int stride = current.getBufferedImage().getWidth();
+                int cWidth = current.getWidth(), cHeight = current.getHeight();
                 for (int r = Utils.max(cY - brushWidth, 0); r < Utils.min(cY + brushWidth, cHeight); r++) {
                     for (int c = Utils.max(cX - brushWidth, 0); c < Utils.min(cX + brushWidth, cWidth); c++) {
                         current.setEnergy(c, r, energy);
-                        image[r * cWidth + c] = color;
+                        image[r * stride + c] = color;
                     }
                 }
-                updateDisplayImage();
+                updateDisplayImage(true);
             }
         });
     }
 
-    // 更新缓冲图像
-    private ImageIcon updateBufferedImage() {
+    // 捕获快照，编码和写文件在后台完成，不阻塞carving线程
+    private void captureSnapshot() {
         SeamCarver carver = this.carver[this.idx];
+        String filename = Utils.joinPath(Main.SNAPSHOTS_DIR, "Snapshot" + this.count++ + ".png");
+        // 按显示的方向输出，CROP_SNAPSHOT时只保留当前宽度
+        int width = CROP_SNAPSHOT ? carver.getWidth() : carver.getWidth(isAdd), height = carver.getHeight();
+        this.recorder.record(
+                this.grayscale ? carver.getGrayImage() : carver.getBufferedImage(),
+                this.orientation(carver),
+                carver.isHorizontal() ? height : width,
+                carver.isHorizontal() ? width : height,
+                filename);
+    }
 
-        int width = carver.getWidth(isAdd);
-        int height = carver.getHeight();
-
-        int[] pixels = carver.getImage();
-
-        Utils.parallel((cpu, cpus) -> {
-            if (this.horizontal && this.grayscale) {
-                // 同时应用水平和灰度处理
-                int[][] grayPixels = Utils.grayscale(this.convertTo2D(pixels, width, height));
-                for (int y = height - 1 - cpu; y >= 0; y -= cpus) {
-                    for (int x = 0; x < width; x++) {
-                        int grayValue = grayPixels[y][x];
-                        int grayPixel = (0xFF << 24) | (grayValue << 16) | (grayValue << 8) | grayValue;
-                        this.bufferedImage.setRGB(height - 1 - y, x, grayPixel);
-                    }
-                }
-                for (int y = cpu; y < height; y += cpus) {
-                    this.bufferedImage.setRGB(y, width - 1, 0xFF);
-                }
-            } else if (this.horizontal) {
-                // 仅应用水平处理
-                for (int y = height - 1 - cpu; y >= 0; y -= cpus) {
-                    for (int x = 0; x < width; x++) {
-                        this.bufferedImage.setRGB(height - 1 - y, x, pixels[y * width + x]);
-                    }
-                }
-                for (int y = cpu; y < height; y += cpus) {
-                    this.bufferedImage.setRGB(y, width - 1, 0xFF);
-                }
-            } else if (this.grayscale) {
-                // 仅应用灰度处理
-                int[][] grayPixels = Utils.grayscale(this.convertTo2D(pixels, width, height));
-                for (int y = cpu; y < height; y += cpus) {
-                    for (int x = 0; x < width; x++) {
-                        int grayValue = grayPixels[y][x];
-                        int grayPixel = (0xFF << 24) | (grayValue << 16) | (grayValue << 8) | grayValue;
-                        this.bufferedImage.setRGB(x, y, grayPixel);
-                    }
-                }
-                for (int y = cpu; y < height; y += cpus) {
-                    this.bufferedImage.setRGB(width - 1, y, 0xFF);
-                }
-            } else { // 无处理
-                for (int y = cpu; y < height; y += cpus) {
-                    for (int x = 0; x < width; x++) {
-                        this.bufferedImage.setRGB(x, y, pixels[y * width + x]);
-                    }
-                }
-                for (int y = cpu; y < height; y += cpus) {
-                    this.bufferedImage.setRGB(width - 1, y, 0xFF);
-                }
-            }
-        });
+    // 开始记录当前carver的每一步，第一帧保存不带突出显示的图像
+    private void startRecording() {
+        this.stopRecording();
+        SeamCarver carver = this.carver[this.idx];
+        if (carver == null)
+            return;
+        String filename = Utils.joinPath(Main.SNAPSHOTS_DIR, "Recording" + this.recordings++ + ".seamrec");
+        carver.updateImage(false, SEAM_COLOR);
+        try {
+            this.seamRecording = new SeamRecording(new File(filename), carver.getImage(), carver.getWidth(),
+                    carver.getHeight(), carver.getBufferedImage().getWidth(), carver.getWidth(isAdd),
+                    carver.isHorizontal());
+        } catch (IOException ignored) {
+        }
+        carver.updateImage(this.highlight, SEAM_COLOR);
+    }
 
-        return new ImageIcon(this.bufferedImage.getScaledInstance(
-                Utils.max(this.scaleW, 1),
-                Utils.max(this.scaleH, 1),
-                Image.SCALE_FAST));
+    // 结束记录，返回记录的步数
+    private int stopRecording() {
+        SeamRecording recording = this.seamRecording;
+        if (recording == null)
+            return 0;
+        this.seamRecording = null;
+        try {
+            recording.close();
+        } catch (IOException ignored) {
+        }
+        return recording.getSteps();
     }
 
-    // 捕获快照
-    private void captureSnapshot() {
-        SeamCarver carver = this.carver[this.idx];
-        String filename = Utils.joinPath(Main.SNAPSHOTS_DIR, "Snapshot" + this.count++ + ".png");
-        if (CROP_SNAPSHOT) {
-            Utils.writeImage(
-                    carver.getImage(),
-                    carver.getWidth(isAdd),
-                    carver.getHeight(),
-                    this.horizontal,
-                    filename);
-        } else {
-            File snapshot = new File(filename);
-            try {
-                ImageIO.write(this.bufferedImage, "PNG", snapshot);
-            } catch (IOException ignored) {
+    // 记录刚刚插入或删除的seam，写入失败时停止记录
+    private void recordStep(SeamCarver carver, boolean insert) {
+        SeamRecording recording = this.seamRecording;
+        if (recording == null)
+            return;
+        try {
+            if (insert) {
+                recording.insert(carver.getLastSeam(), carver.getLastValues());
+            } else {
+                recording.remove(carver.getLastSeam(), carver.getLastValues());
             }
+        } catch (IOException ignored) {
+            this.stopRecording();
         }
-
     }
 
     // 获取icon
@@ -0,0 +1,13 @@
+// 逐像素的内层循环：灰度化、一行的Sobel梯度和反向能量图的一行
+// 默认由ScalarKernels实现，运行时有jdk.incubator.vector模块时使用src-vector中的VectorKernels，见Utils.getKernels
+public interface PixelKernels {
+    // gray[i] = Utils.luma(image[i])，i在[from, to)中
+    void grayscale(int[] image, int[] gray, int from, int to);
+
+    // 按行存储的灰度图像中第y行每个像素的Sobel梯度，写入energy中同样的位置
+    void sobel(int[] gray, int[] energy, int stride, int width, int height, int y);
+
+    // row[w] = energy[offset + w] + min(below[w - 1], below[w], below[w + 1])，w在[from, to)中
+    // 调用者保证三个相邻列都存在，即from >= 1且to <= 宽度 - 1，两端的列单独处理
+    void minRow(int[] energy, int offset, int[] below, int[] row, int from, int to);
+}
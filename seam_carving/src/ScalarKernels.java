@@ -0,0 +1,21 @@
+// PixelKernels的标量实现，没有向量化的实现时使用，也用于处理向量化实现中不足一个向量的尾部
+public class ScalarKernels implements PixelKernels {
+
+    public void grayscale(int[] image, int[] gray, int from, int to) {
+        for (int i = from; i < to; i++) {
+            gray[i] = Utils.luma(image[i]);
+        }
+    }
+
+    public void sobel(int[] gray, int[] energy, int stride, int width, int height, int y) {
+        for (int x = 0, i = y * stride; x < width; x++, i++) {
+            energy[i] = Utils.sobel(gray, stride, width, height, x, y);
+        }
+    }
+
+    public void minRow(int[] energy, int offset, int[] below, int[] row, int from, int to) {
+        for (int w = from; w < to; w++) {
+            row[w] = energy[offset + w] + Utils.min(below[w - 1], below[w], below[w + 1]);
+        }
+    }
+}
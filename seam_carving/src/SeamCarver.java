@@ -1,3 +1,6 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
 public interface SeamCarver {
     int getWidth(boolean isAdd);
 
@@ -5,10 +8,30 @@ public interface SeamCarver {
 
     int getHeight();
 
+    boolean isHorizontal();
+
     int[] getImage();
 
+    int[][] toImage();
+
+    Rectangle getDirtyRegion();
+
+    BufferedImage getBufferedImage();
+
+    BufferedImage getGrayImage();
+
+    int[] getLastSeam();
+
+    int[] getLastValues();
+
     void setUpdate(boolean update);
 
+    void setParallel(boolean parallel);
+
+    void setBatchSize(int batchSize);
+
+    void setListener(SeamListener listener);
+
     void setEnergy(int x, int y, int val);
 
     int add(int count, boolean highlight, int color);
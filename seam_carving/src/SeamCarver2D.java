@@ -0,0 +1,303 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+// 在同一份像素上删除竖直和水平seam，把图像同时调整到给定的宽和高
+// 图像、灰度和能量都按行存储，每行步长为原始宽度，两个方向共用这些数据，不需要转置出第二个carver
+// 一个方向的seam由若干条线组成：竖直seam的线是行，水平seam的线是列
+// 第i条线上第j个像素的位置为i * si + j * sj，两个方向因此可以共用同一套动态规划
+// 删除顺序采用贪心：每一步分别求出两个方向能量最小的seam，删除能量较低的一个，
+// 批量大于1时在这个方向的同一幅能量图上最多删除batchSize个互不交叉的seam
+// （Avidan & Shamir的transport map可以得到最优顺序，但需要对每个(r, c)保存一幅中间图像，内存代价太高）
+public class SeamCarver2D {
+    private int stride; // 每行的步长，即原始宽度
+    private int width;
+    private int height;
+    private int[] image; // 以下各平面在load另一幅图像时尽量复用
+    private int[] gray; // 缓存的灰度图像
+    private int[] energy; // 反向能量，默认为Sobel梯度
+    private final EnergyFunction function;
+    private int[] map; // 当前方向的累计能量，按线存储，两个方向共用
+    private final SeamMetrics metrics = new SeamMetrics(); // 每次删除各阶段的耗时，没有监听器时不计时
+    private int batchSize = 1; // 每次计算能量图后最多删除的seam个数
+    private long seamCost; // 最近一次findSeams得到的各seam的能量之和
+    private long removedEnergy; // 所有被删除的seam的能量之和
+    private int verticalRemoved;
+    private int horizontalRemoved;
+
+    public SeamCarver2D(int[][] image) {
+        this(image, StandardEnergy.SOBEL);
+    }
+
+    public SeamCarver2D(int[][] image, EnergyFunction function) {
+        this.function = function;
+        this.load(image);
+    }
+
+    // 换成另一幅图像并清零统计，批处理中每个线程可以用同一个carver依次处理多幅图像
+    // 已有的平面足够大、又不超过需要的两倍时直接复用，避免为小图像长期占用大图像的空间
+    public void load(int[][] image) {
+        this.height = image.length;
+        this.width = image[0].length;
+        this.stride = this.width;
+        int size = this.height * this.stride;
+        if (this.image == null || this.image.length < size || this.image.length / 2 > size) {
+            this.image = new int[size];
+            this.gray = new int[size];
+            this.energy = new int[size];
+            this.map = new int[size];
+        }
+        int[] pixels = this.image, gray = this.gray, energy = this.energy;
+        int stride = this.stride, width = this.width, height = this.height;
+        Utils.parallel(height, width, (from, to) -> {
+            for (int h = from; h < to; h++) {
+                System.arraycopy(image[h], 0, pixels, h * stride, width);
+                Utils.getKernels().grayscale(pixels, gray, h * stride, h * stride + width);
+            }
+        });
+        // 能量依赖相邻行的灰度，所有灰度算完之后再计算
+        Utils.parallel(height, width, (from, to) -> {
+            for (int h = from; h < to; h++) {
+                this.function.update(gray, energy, stride, width, height, h, 0, width);
+            }
+        });
+        this.removedEnergy = 0;
+        this.verticalRemoved = 0;
+        this.horizontalRemoved = 0;
+    }
+
+    public EnergyFunction getEnergyFunction() {
+        return this.function;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    public void setListener(SeamListener listener) {
+        this.metrics.setListener(listener);
+    }
+
+    public long getRemovedEnergy() {
+        return this.removedEnergy;
+    }
+
+    public int getVerticalRemoved() {
+        return this.verticalRemoved;
+    }
+
+    public int getHorizontalRemoved() {
+        return this.horizontalRemoved;
+    }
+
+    // 删除seam直到图像为width x height，只能缩小
+    public void retarget(int width, int height) {
+        if (width < 1 || height < 1 || width > this.width || height > this.height)
+            throw new IllegalArgumentException("Invalid target size: " + width + " x " + height);
+        boolean last = false; // 上一步删除的方向最后计算能量图，方向不变时不需要重新计算
+        while (this.width > width || this.height > height) {
+            this.metrics.begin(SeamSample.Operation.REMOVE, this.width, this.height);
+            boolean horizontal = this.height > height;
+            if (this.width > width && horizontal) {
+                int first = this.energyMap(!last), second = this.energyMap(last);
+                int verticalCost = last ? first : second, horizontalCost = last ? second : first;
+                horizontal = verticalCost > horizontalCost;
+                if (horizontal != last)
+                    this.energyMap(horizontal);
+            } else {
+                this.energyMap(horizontal);
+            }
+            this.metrics.mark(SeamSample.Phase.MAP);
+            int remaining = horizontal ? this.height - height : this.width - width;
+            this.remove(horizontal, Utils.min(this.batchSize, remaining));
+            last = horizontal;
+        }
+    }
+
+    // 删除一条竖直seam，图像宽度减一
+    public boolean removeVertical() {
+        if (this.width <= 1)
+            return false;
+        this.metrics.begin(SeamSample.Operation.REMOVE, this.width, this.height);
+        this.energyMap(false);
+        this.metrics.mark(SeamSample.Phase.MAP);
+        this.remove(false, 1);
+        return true;
+    }
+
+    // 删除一条水平seam，图像高度减一
+    public boolean removeHorizontal() {
+        if (this.height <= 1)
+            return false;
+        this.metrics.begin(SeamSample.Operation.REMOVE, this.width, this.height);
+        this.energyMap(true);
+        this.metrics.mark(SeamSample.Phase.MAP);
+        this.remove(true, 1);
+        return true;
+    }
+
+    // 在当前的能量图上找出最多count个seam并从右向左删除，左侧seam的位置因此不受影响
+    private void remove(boolean horizontal, int count) {
+        int[][] seams = this.findSeams(horizontal, count);
+        this.metrics.mark(SeamSample.Phase.BACKTRACK);
+        for (int i = seams.length - 1; i >= 0; i--) {
+            this.removeSeam(seams[i], horizontal);
+        }
+        this.removedEnergy += this.seamCost;
+        this.metrics.end(seams.length);
+    }
+
+    // 当前图像，按行存储
+    public int[][] toImage() {
+        int[][] result = new int[this.height][this.width];
+        for (int h = 0; h < this.height; h++) {
+            System.arraycopy(this.image, h * this.stride, result[h], 0, this.width);
+        }
+        return result;
+    }
+
+    // 计算一个方向的累计能量，返回最后一条线上的最小值
+    private int energyMap(boolean horizontal) {
+        int n = horizontal ? this.width : this.height, m = horizontal ? this.height : this.width;
+        int si = horizontal ? 1 : this.stride, sj = horizontal ? this.stride : 1;
+        int[] map = this.map;
+        for (int j = 0; j < m; j++) {
+            map[j] = this.energy[j * sj];
+        }
+        for (int i = 1; i < n; i++) {
+            int line = i * m, above = line - m, offset = i * si;
+            for (int j = 0; j < m; j++) {
+                int min = map[above + j];
+                if (j > 0)
+                    min = Utils.min(min, map[above + j - 1]);
+                if (j < m - 1)
+                    min = Utils.min(min, map[above + j + 1]);
+                map[line + j] = this.energy[offset + j * sj] + min;
+            }
+        }
+        int last = (n - 1) * m, min = map[last];
+        for (int j = 1; j < m; j++) {
+            min = Utils.min(min, map[last + j]);
+        }
+        return min;
+    }
+
+    // 按最后一条线上的累计能量从小到大尝试各个终点，向前回溯，seam[i]为第i条线上被删除的像素
+    // 每条seam在每条线上都必须严格位于左右相邻的已选seam之间，因此它们互不相交也不交叉，按从左到右返回
+    private int[][] findSeams(boolean horizontal, int count) {
+        int n = horizontal ? this.width : this.height, m = horizontal ? this.height : this.width;
+        int[] map = this.map;
+        int last = (n - 1) * m;
+        long[] order = new long[m];
+        for (int j = 0; j < m; j++) {
+            order[j] = ((long) map[last + j] << 32) | j;
+        }
+        if (count > 1) {
+            Arrays.sort(order);
+        } else {
+            // 只删除一个seam时不需要排序，最小值相同时取最左侧
+            int best = 0;
+            for (int j = 1; j < m; j++) {
+                if (map[last + j] < map[last + best])
+                    best = j;
+            }
+            order[0] = best;
+        }
+
+        TreeMap<Integer, int[]> selected = new TreeMap<>();
+        this.seamCost = 0;
+        for (int k = 0; k < m && selected.size() < count; k++) {
+            int end = (int) order[k];
+            Map.Entry<Integer, int[]> l = selected.lowerEntry(end);
+            Map.Entry<Integer, int[]> r = selected.higherEntry(end);
+            int[] left = l == null ? null : l.getValue();
+            int[] right = r == null ? null : r.getValue();
+
+            int[] seam = new int[n];
+            seam[n - 1] = end;
+            int j = end;
+            for (int i = n - 2; i >= 0 && j >= 0; i--) {
+                int line = i * m, lo = left == null ? -1 : left[i], hi = right == null ? m : right[i];
+                // 相同时依次优先正上方、左上方、右上方，没有可选的位置时放弃这个终点
+                int best = j > lo && j < hi ? j : -1;
+                if (j - 1 > lo && j - 1 < hi && (best < 0 || map[line + j - 1] < map[line + best]))
+                    best = j - 1;
+                if (j + 1 > lo && j + 1 < hi && (best < 0 || map[line + j + 1] < map[line + best]))
+                    best = j + 1;
+                j = best;
+                seam[i] = j;
+            }
+            if (j >= 0) {
+                selected.put(end, seam);
+                this.seamCost += map[last + end];
+            }
+        }
+        return selected.values().toArray(new int[0][]);
+    }
+
+    // 删除seam，并重新计算seam附近的能量
+    private void removeSeam(int[] seam, boolean horizontal) {
+        if (horizontal) {
+            // 每列中seam以下的像素上移一行，按行遍历以顺序访问内存
+            int top = seam[0];
+            for (int x = 1; x < this.width; x++) {
+                top = Utils.min(top, seam[x]);
+            }
+            for (int y = top; y < this.height - 1; y++) {
+                int offset = y * this.stride;
+                for (int x = 0; x < this.width; x++) {
+                    if (y >= seam[x]) {
+                        this.image[offset + x] = this.image[offset + this.stride + x];
+                        this.gray[offset + x] = this.gray[offset + this.stride + x];
+                        this.energy[offset + x] = this.energy[offset + this.stride + x];
+                    }
+                }
+            }
+            this.height--;
+            this.horizontalRemoved++;
+        } else {
+            for (int y = 0; y < this.height; y++) {
+                int offset = y * this.stride;
+                SeamCarverBase.removeAt(this.image, offset, seam[y], this.width);
+                SeamCarverBase.removeAt(this.gray, offset, seam[y], this.width);
+                SeamCarverBase.removeAt(this.energy, offset, seam[y], this.width);
+            }
+            this.width--;
+            this.verticalRemoved++;
+        }
+        this.metrics.mark(SeamSample.Phase.SHIFT);
+        this.refreshEnergy(seam, horizontal);
+        this.metrics.mark(SeamSample.Phase.ENERGY);
+    }
+
+    // 只有与seam的距离不超过能量函数半径的像素邻域发生了变化，与SeamCarverBase.refreshEnergy相同
+    private void refreshEnergy(int[] seam, boolean horizontal) {
+        int n = seam.length, m = horizontal ? this.height : this.width, r = this.function.getRadius();
+        for (int i = 0; i < n; i++) {
+            int lo = seam[i], hi = seam[i];
+            for (int k = Utils.max(i - r, 0); k <= Utils.min(i + r, n - 1); k++) {
+                lo = Utils.min(lo, seam[k]);
+                hi = Utils.max(hi, seam[k]);
+            }
+            int from = Utils.max(lo - r, 0), to = Utils.min(hi + r, m - 1);
+            if (!horizontal) {
+                this.function.update(this.gray, this.energy, this.stride, this.width, this.height, i, from, to + 1);
+                continue;
+            }
+            for (int j = from; j <= to; j++) {
+                this.energy[j * this.stride + i] = this.function.energy(this.gray, this.stride, this.width,
+                        this.height, i, j);
+            }
+        }
+    }
+}
@@ -1,43 +1,197 @@
-import java.util.List;
-
 // 使用反向能量实现seam carve
 public class SeamCarverBackward extends SeamCarverBase implements SeamCarver {
 
+    private boolean incremental; // 每个seam之后只重新计算能量图中受影响的部分
+    private boolean stale; // 能量被外部修改，下一次需要完整地重新计算能量图
+
     public SeamCarverBackward(int[][] image) {
-        super(image);
-        this.energy = Utils.sobel(image);
+        this(image, false);
+    }
+
+    public SeamCarverBackward(int[][] image, boolean horizontal) {
+        this(image, horizontal, StandardEnergy.SOBEL);
+    }
+
+    // function为由灰度图像计算能量的函数
+    public SeamCarverBackward(int[][] image, boolean horizontal, EnergyFunction function) {
+        super(image, horizontal);
+        this.incremental = true;
+        this.energyFunction = function;
+        this.energy = function.compute(this.gray, this.maxWidth, this.width, this.height);
+        this.map = new int[this.height][this.maxWidth];
         this.energyMap();
     }
 
-    public boolean add(boolean highlight, int color) {
-        boolean valid = super.add(highlight, color);
-        if (valid)
-            this.energyMap();
-        return valid;
+    public void load(int[][] image) {
+        super.load(image);
+        this.stale = false;
+        this.computeEnergy();
+        this.map = this.rows(this.map);
+        this.energyMap();
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public void setEnergy(int x, int y, int val) {
+        super.setEnergy(x, y, val);
+        this.stale = true;
+    }
+
+    protected void seamInserted(int[] path, int width) {
+        this.refreshEnergy(path);
+        this.energyMap(path, width, true);
+    }
+
+    protected void seamRemoved(int[] path, int width) {
+        this.refreshEnergy(path);
+        this.energyMap(path, width, false);
     }
 
-    public boolean remove(boolean highlight, int color) {
-        boolean valid = super.remove(highlight, color);
-        if (valid)
+    // 批量删除之后刷新每条seam两侧的梯度，再完整地重新计算能量图
+    protected void seamsRemoved(int[][] paths) {
+        for (int i = 0; i < paths.length; i++) {
+            // 左侧每删除一条seam，这条seam右侧的像素就左移一列
+            int[] path = new int[this.height];
+            for (int h = 0; h < this.height; h++) {
+                path[h] = paths[i][h] - i;
+            }
+            this.refreshEnergy(path);
+        }
+        this.stale = false;
+        this.energyMap();
+    }
+
+    protected void seamsInserted(int[][] paths) {
+        for (int[] path : paths) {
+            this.refreshEnergy(path);
+        }
+        this.stale = false;
+        this.energyMap();
+    }
+
+    protected SeamCarverBase scratch(int[][] image) {
+        return new SeamCarverBackward(image, false, this.energyFunction);
+    }
+
+    // 删除或插入path之后更新能量图，width为操作之前的宽度
+    private void energyMap(int[] path, int width, boolean insert) {
+        if (!this.incremental || this.stale) {
+            this.stale = false;
             this.energyMap();
-        return valid;
-    }
-
-    // 从梯度图像创建能量图
-    private void energyMap() {
-        for (int w = 0; w < this.width; w++) {
-            this.map[this.height - 1][w] = this.energy.get(this.height - 1).get(w);
-        }
-        // 从底部向上计算能量
-        for (int h = this.height - 2; h >= 0; h--) {
-            List<Integer> row = this.energy.get(h);
-            this.map[h][0] = row.get(0) + Utils.min(this.map[h + 1][0], this.map[h + 1][1]);
-            int w;
-            for (w = 1; w < this.width - 1; w++) {
-                this.map[h][w] = row.get(w) +
-                        Utils.min(this.map[h + 1][w - 1], this.map[h + 1][w], this.map[h + 1][w + 1]);
+            return;
+        }
+        // 先让能量图的每一行与图像一样移动，未受影响的格子保持原值
+        for (int h = 0; h < this.height; h++) {
+            if (insert) {
+                insertAt(this.map[h], 0, path[h], 0, width);
+            } else {
+                removeAt(this.map[h], 0, path[h], width);
+            }
+        }
+        // 从底部向上只重新计算seam附近以及下一行中数值发生变化的格子
+        int changedFrom = this.width, changedTo = -1;
+        for (int h = this.height - 1; h >= 0; h--) {
+            int from = this.bandFrom(path, h), to = this.bandTo(path, h);
+            if (changedFrom <= changedTo) {
+                from = Utils.min(from, changedFrom - 1);
+                to = Utils.max(to, changedTo + 1);
             }
-            this.map[h][w] = row.get(w) + Utils.min(this.map[h + 1][w - 1], this.map[h + 1][w]);
+            from = Utils.max(from, 0);
+            to = Utils.min(to, this.width - 1);
+
+            int[] row = this.map[h];
+            changedFrom = this.width;
+            changedTo = -1;
+            for (int w = from; w <= to; w++) {
+                int value = this.cumulative(h, w);
+                if (value != row[w]) {
+                    row[w] = value;
+                    if (w < changedFrom)
+                        changedFrom = w;
+                    changedTo = w;
+                }
+            }
+        }
+        this.metrics.mark(SeamSample.Phase.MAP);
+    }
+
+    // 计算能量图中(w, h)处的累计能量
+    private int cumulative(int h, int w) {
+        int energy = this.energy[h * this.maxWidth + w];
+        if (h == this.height - 1)
+            return energy;
+        int[] below = this.map[h + 1];
+        if (this.width == 1)
+            return energy + below[0];
+        if (w == 0)
+            return energy + Utils.min(below[0], below[1]);
+        if (w == this.width - 1)
+            return energy + Utils.min(below[w - 1], below[w]);
+        return energy + Utils.min(below[w - 1], below[w], below[w + 1]);
+    }
+
+    // 从梯度图像创建能量图，也供基准测试直接调用
+    void energyMap() {
+        int offset = (this.height - 1) * this.maxWidth;
+        System.arraycopy(this.energy, offset, this.map[this.height - 1], 0, this.width);
+        if (this.parallel) {
+            this.energyMapParallel();
+        } else {
+            // 从底部向上计算能量
+            for (int h = this.height - 2; h >= 0; h--) {
+                this.energyRow(h, 0, this.width, this.map[h + 1], this.map[h]);
+            }
+        }
+        this.metrics.mark(SeamSample.Phase.MAP);
+    }
+
+    // 按波前并行计算能量图：每次处理BAND行，各列块在自己的缓冲区中重复计算两侧逐行收缩的边界列，
+    // 因此批内不需要同步，结果与串行计算完全一致
+    private void energyMapParallel() {
+        for (int h0 = this.height - 1; h0 > 0; h0 -= BAND) {
+            int bottom = h0, rows = Utils.min(BAND, h0);
+            Utils.parallel(this.width, rows, (from, to) -> this.tile(bottom, rows, from, to));
+        }
+    }
+
+    // 计算bottom上方rows行中[from, to)列的累计能量
+    private void tile(int bottom, int rows, int from, int to) {
+        int[][] scratch = SCRATCH.get();
+        if (scratch[0].length < this.width) {
+            scratch = new int[][] { new int[this.maxWidth], new int[this.maxWidth] };
+            SCRATCH.set(scratch);
+        }
+        int[] below = this.map[bottom];
+        for (int k = 1; k <= rows; k++) {
+            int h = bottom - k, ghost = rows - k;
+            int lo = Utils.max(from - ghost, 0), hi = Utils.min(to + ghost, this.width);
+            int[] row = ghost == 0 ? this.map[h] : scratch[k & 1];
+            this.energyRow(h, lo, hi, below, row);
+            if (ghost > 0)
+                System.arraycopy(row, from, this.map[h], from, to - from);
+            below = row;
+        }
+    }
+
+    private static final ThreadLocal<int[][]> SCRATCH = ThreadLocal.withInitial(() -> new int[2][0]);
+
+    // 根据下一行的累计能量below计算第h行[from, to)列的累计能量
+    private void energyRow(int h, int from, int to, int[] below, int[] row) {
+        int offset = h * this.maxWidth, last = this.width - 1;
+        int w = from;
+        if (w == 0) {
+            row[0] = this.energy[offset] + (last == 0 ? below[0] : Utils.min(below[0], below[1]));
+            w++;
+        }
+        int end = Utils.min(to, last);
+        if (w < end) {
+            Utils.getKernels().minRow(this.energy, offset, below, row, w, end);
+            w = end;
+        }
+        if (w == last && w < to) {
+            row[w] = this.energy[offset + w] + Utils.min(below[w - 1], below[w]);
         }
     }
 }
@@ -1,61 +1,181 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Stack;
+import java.util.TreeMap;
 
 // 基本的Seam Carving操作，由所有子类继承
 public abstract class SeamCarverBase {
+    protected final boolean horizontal; // 水平carver中的图像是原图顺时针旋转90度，水平seam成为竖直seam
     protected int height;
     protected int width;
     protected boolean update;
+    protected boolean parallel; // 是否使用并行的波前算法计算能量图
     protected Stack<int[]> seams;
-    protected Stack<int[]> values; // 存储从图像中删除的seam的值
     protected Stack<int[]> energyValues; // 存储从内部能量图像中移除的seam的值
-    protected List<List<Integer>> energy; // 能量图像
-    protected List<List<Integer>> image; // 存储实际图像的二维数组
-    protected int[] data; // 存储当前图像的一维数组
-    protected int[][] map; // 存储能量图像的二维数组
-    protected int maxWidth; // 最大宽度
-    private int seamCount = 0;
+    protected int[] energy; // 能量图像，按行存储，每行步长为maxWidth，由子类设置，可以就是gray
+    protected EnergyFunction energyFunction; // 由灰度计算energy的函数，refreshEnergy按它的半径增量更新
+    protected int[] image; // 实际图像，按行存储，每行步长为maxWidth
+    protected int[] gray; // 缓存的灰度图像，与image同步移动
+    protected int[] data; // 存储当前图像的一维数组，即bufferedImage的像素，第一次显示时才创建
+    protected BufferedImage bufferedImage; // 与data共享像素的图像，宽度为maxWidth
+    private BufferedImage grayImage; // 灰度显示用的图像，第一次请求时才创建，之后与data一起刷新
+    private int[] grayData; // grayImage的像素
+    protected int[][] map; // 存储能量图像的二维数组，由使用它的子类创建
+    protected int maxWidth; // 每行已分配的宽度，同时也是image/energy/data每行的步长，插入时按需增长
+    protected int limit; // 插入seam后最多达到的宽度
+    protected int batchSize; // 每次计算能量图后最多删除的seam个数
+    protected int[] lastPath; // 最近一次删除或插入的seam
+    private int[] lastValues; // 最近一次删除的seam的值，插入后为null
+    private int[] dirtyFrom; // data中每行需要刷新的第一列
+    private int dirtyTo; // data中需要刷新的列的上界（不含）
+    private boolean dirty; // data与image不一致，需要在getImage时刷新
+    private int[] highlighted; // data中当前突出显示的seam
+    private int[] highlight; // 下一次刷新时要突出显示的seam
+    private int highlightColor;
+    private final Rectangle region; // 自上次getDirtyRegion以来data中被刷新的区域
+    private int[] plan; // 插入seam的规划：每个像素在副本上第几步被删除
+    private int planWidth; // 规划时的图像宽度
+    private int planSize; // 规划中seam的个数
+    private int planned; // 规划中已经插入的seam个数
+    private SeamCarverBase planner; // 规划所用的副本，规划用尽时在它上面继续删除seam
+    protected final SeamMetrics metrics; // 每次操作各阶段的耗时，没有监听器时不计时
+
+    // 插入seam后的宽度最多为原始宽度的倍数
+    public static final int MAX_SCALE = 2;
+
+    // 并行计算能量图时每一批处理的行数，块边界两侧各多算BAND列以避免批内同步
+    protected static final int BAND = 32;
 
     // 构造函数接受 2D 图像数组
     public SeamCarverBase(int[][] image) {
-        this.height = image.length;
-        this.width = image[0].length;
-        this.maxWidth = this.width * 2; // 将最大宽度设置为原始宽度的两倍
+        this(image, false);
+    }
+
+    // horizontal为true时删除和插入水平seam，图像在载入时直接按旋转后的方向写入，不需要转置的副本
+    public SeamCarverBase(int[][] image, boolean horizontal) {
+        this.horizontal = horizontal;
+        this.height = horizontal ? image[0].length : image.length;
+        this.width = horizontal ? image.length : image[0].length;
+        this.limit = this.width * MAX_SCALE;
+        this.maxWidth = this.width; // 只删除seam时不需要额外的空间，第一次插入时再扩大
         this.update = true;
+        this.parallel = true;
+        this.batchSize = 1;
+        this.energyFunction = StandardEnergy.SOBEL;
+        this.metrics = new SeamMetrics();
         this.seams = new Stack<>();
-        this.values = new Stack<>();
         this.energyValues = new Stack<>();
-        this.image = new ArrayList<>(this.height);
-        this.data = new int[this.height * this.maxWidth]; // 初始化为最大宽度
-        this.map = new int[this.height][this.maxWidth]; // 初始化为最大宽度
-        this.energy = new ArrayList<>(this.height);
+        this.image = new int[this.height * this.maxWidth];
 
-        for (int h = 0; h < this.height; h++) {
-            this.image.add(new ArrayList<>(this.maxWidth)); // 初始化为最大宽度
-            this.energy.add(new ArrayList<>(this.maxWidth)); // 初始化为最大宽度
+        this.dirtyFrom = new int[this.height];
+        Arrays.fill(this.dirtyFrom, Integer.MAX_VALUE);
+        this.region = new Rectangle(0, 0, this.width, this.height);
+
+        this.fill(image);
+        this.gray = Utils.grayscale(this.image, this.maxWidth, this.width, this.height);
+    }
+
+    // 换成另一幅图像，方向和各项设置不变，批处理中每个线程可以用同一个carver依次处理多幅图像
+    // 已有的平面足够大、又不超过需要的两倍时直接复用，步长取平面能容纳的最大宽度，插入时也少扩大几次
+    // 删除记录、插入规划和显示用的图像都重新开始，子类覆盖时在此之后重新计算能量和能量图
+    public void load(int[][] image) {
+        this.height = this.horizontal ? image[0].length : image.length;
+        this.width = this.horizontal ? image.length : image[0].length;
+        this.limit = this.width * MAX_SCALE;
+        int size = this.height * this.width;
+        if (this.image.length < size || this.image.length / 2 > size) {
+            this.image = new int[size];
+            this.gray = new int[size];
         }
+        this.maxWidth = Utils.min(this.image.length / this.height, this.limit);
+        this.fill(image);
+        int[] pixels = this.image, gray = this.gray;
+        int stride = this.maxWidth;
+        Utils.parallel(this.height, this.width, (from, to) -> {
+            for (int h = from; h < to; h++) {
+                Utils.getKernels().grayscale(pixels, gray, h * stride, h * stride + this.width);
+            }
+        });
 
-        for (int h = 0; h < this.height; h++) {
-            for (int w = 0; w < this.width; w++) {
-                this.image.get(h).add(image[h][w]);
-                this.data[h * this.maxWidth + w] = image[h][w];
-                this.energy.get(h).add(0); // 初始化能量图像
+        this.seams.clear();
+        this.energyValues.clear();
+        this.lastPath = null;
+        this.lastValues = null;
+        this.plan = null;
+        this.planner = null;
+        if (this.dirtyFrom.length != this.height)
+            this.dirtyFrom = new int[this.height];
+        Arrays.fill(this.dirtyFrom, Integer.MAX_VALUE);
+        this.dirtyTo = 0;
+        this.dirty = false;
+        this.highlighted = null;
+        this.highlight = null;
+        this.data = null;
+        this.bufferedImage = null;
+        this.grayImage = null;
+        this.grayData = null;
+        this.region.setBounds(0, 0, this.width, this.height);
+    }
+
+    // 由灰度重新计算整幅能量，能量平面与image一样大时直接写入
+    protected void computeEnergy() {
+        if (this.energy == null || this.energy.length != this.image.length) {
+            this.energy = this.energyFunction.compute(this.gray, this.maxWidth, this.width, this.height);
+            return;
+        }
+        Utils.parallel(this.height, this.width, (from, to) -> {
+            for (int h = from; h < to; h++) {
+                this.energyFunction.update(this.gray, this.energy, this.maxWidth, this.width, this.height, h, 0,
+                        this.width);
             }
-            // 初始化剩余部分为0
-            for (int w = this.width; w < this.maxWidth; w++) {
-                this.image.get(h).add(0);
-                this.energy.get(h).add(0);
+        });
+    }
+
+    // 按行分配的数组行数和每行长度都与当前的height和maxWidth相同时复用，否则重新分配
+    protected int[][] rows(int[][] rows) {
+        if (rows != null && rows.length == this.height && rows[0].length == this.maxWidth)
+            return rows;
+        return new int[this.height][this.maxWidth];
+    }
+
+    // 将原图写入image，水平carver中第h行第w列是原图第w行倒数第h + 1列的像素
+    private void fill(int[][] image) {
+        if (!this.horizontal) {
+            for (int h = 0; h < this.height; h++) {
+                System.arraycopy(image[h], 0, this.image, h * this.maxWidth, this.width);
             }
+            return;
         }
+        // 按块读取原图的列，每个任务写入连续的若干行
+        int blockSize = 8, last = this.height - 1;
+        Utils.parallel(this.height, this.width, (from, to) -> {
+            for (int h = from; h < to; h += blockSize) {
+                int hEnd = Utils.min(h + blockSize, to);
+                for (int w = 0; w < this.width; w++) {
+                    int[] row = image[w];
+                    for (int i = h; i < hEnd; i++) {
+                        this.image[i * this.maxWidth + w] = row[last - i];
+                    }
+                }
+            }
+        });
     }
 
+    public boolean isHorizontal() {
+        return this.horizontal;
+    }
+
+    // 当前图像，按原图的方向，不包含突出显示
+    public int[][] toImage() {
+        return Utils.toImage(this.image, this.width, this.height, this.maxWidth, this.horizontal);
+    }
+
+    // 显示时的宽度，即插入seam后最多达到的宽度，不是image的步长
     public int getWidth(boolean isAdd) {
-        if (isAdd)
-            return this.maxWidth;
-        else {
-            return this.maxWidth;
-        }
+        return this.limit;
     }
 
     public int getWidth() {
@@ -66,141 +186,421 @@ public abstract class SeamCarverBase {
         return this.height;
     }
 
-    // 返回当前图像
+    // 返回当前图像，只在需要时刷新自上次以来发生变化的部分
     public int[] getImage() {
+        this.display();
+        this.flush();
         return this.data;
     }
 
+    // 返回与data共享像素的图像，只有左侧getWidth()列是当前图像
+    public BufferedImage getBufferedImage() {
+        this.display();
+        this.flush();
+        return this.bufferedImage;
+    }
+
+    // 第一次显示时才创建与data共享像素的图像，只在carver内部删除或插入seam时不需要
+    private void display() {
+        if (this.bufferedImage != null)
+            return;
+        // data直接作为图像的像素数组，界面绘制时不需要再拷贝
+        this.bufferedImage = new BufferedImage(this.maxWidth, this.height, BufferedImage.TYPE_INT_ARGB);
+        this.data = ((DataBufferInt) this.bufferedImage.getRaster().getDataBuffer()).getData();
+        this.invalidate();
+    }
+
+    // 下一次刷新时重新拷贝整幅图像
+    private void invalidate() {
+        Arrays.fill(this.dirtyFrom, 0);
+        this.dirtyTo = this.width;
+        this.highlighted = null;
+        this.dirty = true;
+    }
+
+    // 返回当前图像的灰度版本，直接由缓存的灰度图像得到，之后每次刷新时一起更新
+    public BufferedImage getGrayImage() {
+        if (this.grayImage == null) {
+            this.grayImage = new BufferedImage(this.maxWidth, this.height, BufferedImage.TYPE_INT_ARGB);
+            this.grayData = ((DataBufferInt) this.grayImage.getRaster().getDataBuffer()).getData();
+            this.invalidate();
+        }
+        this.flush();
+        return this.grayImage;
+    }
+
+    // 最近一次删除或插入的seam，批量操作时是其中最后处理的一个
+    public int[] getLastSeam() {
+        return this.lastPath;
+    }
+
+    // 最近一次删除的seam上原来的像素，或者最近一次插入的seam上复制出的像素
+    public int[] getLastValues() {
+        if (this.lastPath == null)
+            return null;
+        if (this.lastValues != null)
+            return this.lastValues;
+        int[] values = new int[this.height];
+        for (int h = 0; h < this.height; h++) {
+            values[h] = this.image[h * this.maxWidth + this.lastPath[h]];
+        }
+        return values;
+    }
+
+    // 返回自上次调用以来data中发生变化的区域
+    public Rectangle getDirtyRegion() {
+        this.flush();
+        Rectangle region = new Rectangle(this.region);
+        this.region.setSize(0, 0);
+        return region;
+    }
+
     public void setUpdate(boolean update) {
         this.update = update;
     }
 
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    // 批量删除时每次计算能量图后最多取出的互不相交的seam个数，1表示逐个删除
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    // 每次删除、插入seam和刷新显示之后把各阶段的耗时交给listener，null表示不再计时
+    public void setListener(SeamListener listener) {
+        this.metrics.setListener(listener);
+    }
+
     // 设置给定位置的能量值
     public void setEnergy(int x, int y, int val) {
-        this.energy.get(y).set(x, val);
+        this.energy[y * this.maxWidth + x] = val;
+        this.plan = null;
+        this.planner = null;
+    }
+
+    // 删除一行中col处的元素，其后的元素向左移动一位，返回被删除的值
+    protected static int removeAt(int[] plane, int offset, int col, int length) {
+        int value = plane[offset + col];
+        System.arraycopy(plane, offset + col + 1, plane, offset + col, length - col - 1);
+        return value;
+    }
+
+    // 在一行中col处插入value，其后的元素向右移动一位
+    protected static void insertAt(int[] plane, int offset, int col, int value, int length) {
+        System.arraycopy(plane, offset + col, plane, offset + col + 1, length - col);
+        plane[offset + col] = value;
     }
 
-    // 添加count个seam
+    // 添加count个seam，一次规划好的seam在每行的一次遍历中一起插入
     public int add(int count, boolean highlight, int color) {
         if (count <= 0)
             return 0;
+        this.metrics.begin(SeamSample.Operation.INSERT, this.width, this.height);
         int added = 0;
-        for (int i = 0; i < count; i++) {
-            if (this.add(highlight, color)) {
-                added++;
+        while (added < count && this.width < this.limit) {
+            int[][] paths = this.insert(count - added);
+            added += paths.length;
+            this.lastPath = paths[paths.length - 1];
+            this.lastValues = null;
+            this.seamsInserted(paths);
+        }
+        if (added > 0 && this.update) {
+            if (highlight) {
+                this.updateImage(this.lastPath, color);
             } else {
-                break;
+                this.updateImage();
             }
         }
+        this.metrics.end(added);
         return added;
     }
 
     // 添加下一个seam
     public boolean add(boolean highlight, int color) {
-        int k = 2 * seamCount + 1;
-        seamCount++; // 递增计数器
-
-        if (k > this.width)
-            k = this.width;
-
-        int[] path = new int[this.height];
-        int[] values = new int[this.height];
-        int[] energyValues = new int[this.height];
+        if (this.width >= this.limit)
+            return false;
 
-        // 找到第k小能量的路径
-        int minIndex = Utils.kthMinIndex(this.map[0], this.width, k);
-        path[0] = minIndex;
-        values[0] = this.image.get(0).get(minIndex);
-        energyValues[0] = this.energy.get(0).get(minIndex);
+        this.metrics.begin(SeamSample.Operation.INSERT, this.width, this.height);
+        int width = this.width;
+        int[] path = this.insert(1)[0];
 
-        for (int h = 1; h < this.height; h++) {
-            int[] row = this.map[h];
-            // if (minIndex == 0) {
-            // minIndex = Utils.kthMinIndex(new int[] { row[0], row[1] }, 2, k);
-            // } else if (minIndex == this.width - 1) {
-            // minIndex = Utils.kthMinIndex(new int[] { row[this.width - 2], row[this.width
-            // - 1] }, 2, k);
-            // } else {
-            // minIndex = Utils.kthMinIndex(new int[] { row[minIndex - 1], row[minIndex],
-            // row[minIndex + 1] },
-            // 3, k);
-            // }
-            if (minIndex == 0) {
-                minIndex = Utils.min(row[0], row[1]) == row[0] ? 0 : 1;
-            } else if (minIndex == this.width - 1) {
-                int minValue = Utils.min(row[this.width - 2], row[this.width - 1]);
-                minIndex = row[this.width - 2] == minValue ? this.width - 2 : this.width - 1;
+        this.lastPath = path;
+        this.lastValues = null;
+        if (this.update) {
+            if (highlight) {
+                this.updateImage(path, color);
             } else {
-                int minValue = Utils.min(row[minIndex - 1], row[minIndex], row[minIndex + 1]);
-                if (row[minIndex - 1] == minValue)
-                    minIndex = minIndex - 1;
-                else if (row[minIndex + 1] == minValue)
-                    minIndex = minIndex + 1;
+                this.updateImage();
             }
-            path[h] = minIndex;
-            values[h] = this.image.get(h).get(minIndex);
-            energyValues[h] = this.energy.get(h).get(minIndex);
-        }
-
-        // 并行添加新路径
-        Utils.parallel((cpu, cpus) -> {
-            for (int h = cpu; h < this.height; h += cpus) {
-                // 检查是否需要调整大小
-                if (this.image.get(h).size() >= this.width) {
-                    List<Integer> newList = new ArrayList<>(this.image.get(h).size() + 1);
-                    newList.addAll(this.image.get(h));
-                    this.image.set(h, newList);
+        }
+        this.seamInserted(path, width);
+        this.metrics.end(1);
+        return true;
+    }
+
+    // 插入规划中的后count个seam，返回它们复制出的像素在插入后所在的列
+    // 规划失效时先在当前图像的副本上删除count个seam，得到的就是能量最低的count个seam
+    // 连续插入用尽规划时在同一个副本上继续删除，规划的个数翻倍，已规划的步骤不变，
+    // 因此逐个插入与一次插入同样多的seam结果相同，不会在已经放大的图像上反复复制同一个seam
+    private int[][] insert(int count) {
+        int rest = this.planSize - this.planned;
+        if (this.plan != null && count > rest && this.planner != null) {
+            int extra = Utils.max(count - rest, this.planSize);
+            extra = Utils.min(extra, Utils.min(this.planner.width - 1, this.limit - this.width - rest));
+            if (extra > 0)
+                this.extend(extra);
+        }
+        if (this.plan == null || this.planned == this.planSize) {
+            int available = Utils.min(this.width - 1, this.limit - this.width);
+            this.plan(Utils.max(Utils.min(count, available), 1));
+        }
+        this.metrics.mark(SeamSample.Phase.BACKTRACK);
+        int m = Utils.min(count, Utils.min(this.planSize - this.planned, this.limit - this.width));
+        this.reserve(this.width + m);
+        int first = this.planned, planWidth = this.planWidth;
+        int[][] paths = new int[m][this.height];
+
+        Utils.parallel(this.height, this.width, (from, to) -> {
+            int[] cols = new int[m], steps = new int[m];
+            for (int h = from; h < to; h++) {
+                // 原始的第x列前面已经插入了existing个像素
+                int offset = h * planWidth, existing = 0, k = 0;
+                for (int x = 0; x < planWidth && k < m; x++) {
+                    int step = this.plan[offset + x];
+                    if (step < first) {
+                        existing++;
+                    } else if (step < first + m) {
+                        cols[k] = x + existing;
+                        steps[k++] = step - first;
+                    }
                 }
-                if (this.energy.get(h).size() >= this.width) {
-                    List<Integer> newList = new ArrayList<>(this.energy.get(h).size() + 1);
-                    newList.addAll(this.energy.get(h));
-                    this.energy.set(h, newList);
+                offset = h * this.maxWidth;
+                expand(this.image, offset, cols, this.width);
+                expand(this.gray, offset, cols, this.width);
+                if (this.energy != this.gray)
+                    expand(this.energy, offset, cols, this.width);
+                for (int i = 0; i < m; i++) {
+                    paths[steps[i]][h] = cols[i] + i;
                 }
-                this.image.get(h).add(path[h], values[h]);
-                this.energy.get(h).add(path[h], energyValues[h]);
             }
         });
 
-        this.width += 1;
-        if (this.update) {
-            if (highlight) {
-                this.updateImage(path, color);
-            } else {
-                this.updateImage();
+        this.width += m;
+        this.planned += m;
+        for (int[] path : paths) {
+            this.markDirty(path);
+        }
+        this.metrics.mark(SeamSample.Phase.SHIFT);
+        return paths;
+    }
+
+    // 保证每行至少有capacity的空间，按1.5倍扩大以减少重新分配的次数
+    private void reserve(int capacity) {
+        if (capacity <= this.maxWidth)
+            return;
+        this.grow(Utils.min(Utils.max(capacity, this.maxWidth + this.maxWidth / 2), this.limit));
+    }
+
+    // 将每行的空间扩大到stride，子类中按列存储的数组需要一起扩大
+    protected void grow(int stride) {
+        int old = this.maxWidth;
+        this.maxWidth = stride;
+        this.image = this.widen(this.image, old);
+        int[] gray = this.widen(this.gray, old);
+        this.energy = this.energy == this.gray ? gray : this.widen(this.energy, old);
+        this.gray = gray;
+        if (this.map != null) {
+            for (int h = 0; h < this.height; h++) {
+                this.map[h] = Arrays.copyOf(this.map[h], stride);
             }
         }
+        // 显示用的图像也需要更宽，重新创建并整幅刷新
+        if (this.bufferedImage != null) {
+            this.bufferedImage = null;
+            this.display();
+        }
+        if (this.grayImage != null) {
+            this.grayImage = new BufferedImage(this.maxWidth, this.height, BufferedImage.TYPE_INT_ARGB);
+            this.grayData = ((DataBufferInt) this.grayImage.getRaster().getDataBuffer()).getData();
+            this.invalidate();
+        }
+        this.region.setBounds(0, 0, this.maxWidth, this.height);
+    }
 
-        return true;
+    // 将每行步长为old的平面拷贝到步长为maxWidth的新数组中
+    private int[] widen(int[] plane, int old) {
+        int[] result = new int[this.height * this.maxWidth];
+        Utils.parallel(this.height, this.width, (from, to) -> {
+            for (int h = from; h < to; h++) {
+                System.arraycopy(plane, h * old, result, h * this.maxWidth, this.width);
+            }
+        });
+        return result;
+    }
+
+    // 在副本上删除n个seam，并记录当前图像中每个像素在第几步被删除
+    private void plan(int n) {
+        this.planner = null;
+        if (this.width == 1) {
+            // 只剩一列时副本上无法删除seam，唯一的一列就是要复制的seam
+            this.planWidth = 1;
+            this.planSize = 1;
+            this.planned = 0;
+            this.plan = new int[this.height];
+            return;
+        }
+        int[][] image = new int[this.height][this.width];
+        for (int h = 0; h < this.height; h++) {
+            System.arraycopy(this.image, h * this.maxWidth, image[h], 0, this.width);
+        }
+        SeamCarverBase scratch = this.scratch(image);
+        // 副本的创建（灰度、梯度和第一次能量图）计入ENERGY，之后副本上的各阶段计入当前操作
+        this.metrics.mark(SeamSample.Phase.ENERGY);
+        scratch.metrics.join(this.metrics);
+        scratch.setUpdate(false);
+        scratch.setParallel(this.parallel);
+        scratch.setBatchSize(this.batchSize);
+        this.planner = scratch;
+        this.planWidth = this.width;
+        this.planned = 0;
+        this.plan = new int[this.height * this.width];
+        this.extend(n);
     }
 
+    // 在规划所用的副本上再删除n个seam，按副本上的全部seam重新记录删除步骤
+    private void extend(int n) {
+        ((SeamCarver) this.planner).remove(n, false, 0);
+        this.planSize = this.planner.seams.size();
+        SeamCarverIndex.build(this.planner.seams.toArray(new int[0][]), this.plan, this.height, this.planWidth);
+    }
+
+    // 在一行中按升序排列的cols列处各复制一个像素，其余元素依次右移
+    private static void expand(int[] plane, int offset, int[] cols, int length) {
+        for (int i = cols.length - 1; i >= 0; i--) {
+            int start = cols[i], end = i + 1 < cols.length ? cols[i + 1] : length;
+            System.arraycopy(plane, offset + start, plane, offset + start + i + 1, end - start);
+            plane[offset + start + i] = plane[offset + start + i + 1];
+        }
+    }
+
+    // 创建同类型的carver，用于在副本上规划要插入的seam
+    protected abstract SeamCarverBase scratch(int[][] image);
+
+    // 批量插入seam之后由子类更新能量和能量图，paths为插入后复制出的像素所在的列
+    protected abstract void seamsInserted(int[][] paths);
+
+    // 逐个插入一个seam之后由子类更新能量和能量图，width为插入之前的宽度
+    protected abstract void seamInserted(int[] path, int width);
+
     // 删除count个seam
     public int remove(int count, boolean highlight, int color) {
         if (count <= 0 || this.width <= 1)
             return 0;
+        this.metrics.begin(SeamSample.Operation.REMOVE, this.width, this.height);
         int removed = 0;
-        for (int i = 0; i < count; i++) {
-            if (this.remove(highlight, color)) {
-                removed++;
+        while (removed < count && this.width > 1) {
+            int k = Utils.min(this.batchSize, Utils.min(count - removed, this.width - 1));
+            if (k > 1) {
+                removed += this.removeBatch(k, highlight, color);
             } else {
-                break;
+                this.removeSeam(highlight, color);
+                removed++;
             }
         }
+        this.metrics.end(removed);
         return removed;
     }
 
-    // 删除下一个seam
-    public boolean remove(boolean highlight, int color) {
-        if (this.width <= 1)
-            return false;
+    // 从同一张能量图中取出最多k个互不交叉的seam，并在每行的一次压缩中一起删除
+    protected int removeBatch(int k, boolean highlight, int color) {
+        this.plan = null;
+        this.planner = null;
+        int[][] paths = this.findSeams(k);
+        this.metrics.mark(SeamSample.Phase.BACKTRACK);
+        int n = paths.length;
+        int[][] values = new int[n][this.height];
+        int[][] energyValues = new int[n][this.height];
 
-        int[] path = new int[this.height];
-        int[] values = new int[this.height];
-        int[] energyValues = new int[this.height];
+        Utils.parallel(this.height, this.width, (from, to) -> {
+            int[] cols = new int[n];
+            for (int h = from; h < to; h++) {
+                for (int i = 0; i < n; i++) {
+                    cols[i] = paths[i][h];
+                    values[i][h] = this.image[h * this.maxWidth + cols[i]];
+                    energyValues[i][h] = this.energy[h * this.maxWidth + cols[i]];
+                }
+                int offset = h * this.maxWidth;
+                this.compact(this.image, offset, cols);
+                this.compact(this.gray, offset, cols);
+                if (this.energy != this.gray)
+                    this.compact(this.energy, offset, cols);
+            }
+        });
+        for (int[] path : paths) {
+            this.markDirty(path);
+        }
+        this.width -= n;
+        this.metrics.mark(SeamSample.Phase.SHIFT);
+
+        // 从右向左入栈，这样每条seam的坐标在依次删除时仍然有效
+        for (int i = n - 1; i >= 0; i--) {
+            this.seams.push(paths[i]);
+            this.energyValues.push(energyValues[i]);
+        }
+        this.lastPath = paths[0];
+        this.lastValues = values[0];
+        this.seamsRemoved(paths);
+        if (this.update) {
+            if (highlight) {
+                this.updateImage(paths[0], color);
+            } else {
+                this.updateImage();
+            }
+        }
+        return n;
+    }
 
+    // 重新计算seam两侧邻域发生变化的像素的能量，只读取缓存的灰度图像
+    protected void refreshEnergy(int[] path) {
+        for (int h = 0; h < this.height; h++) {
+            int from = Utils.max(this.bandFrom(path, h), 0);
+            int to = Utils.min(this.bandTo(path, h), this.width - 1);
+            if (from <= to)
+                this.energyFunction.update(this.gray, this.energy, this.maxWidth, this.width, this.height, h, from,
+                        to + 1);
+        }
+        this.metrics.mark(SeamSample.Phase.ENERGY);
+    }
+
+    // seam在第h行影响的第一列：能量函数半径r以内各行seam的位置再向左r列
+    protected int bandFrom(int[] path, int h) {
+        int r = this.energyFunction.getRadius();
+        int from = path[h];
+        for (int i = Utils.max(h - r, 0); i <= Utils.min(h + r, this.height - 1); i++) {
+            from = Utils.min(from, path[i]);
+        }
+        return from - r;
+    }
+
+    // seam在第h行影响的最后一列：能量函数半径r以内各行seam的位置再向右r列
+    protected int bandTo(int[] path, int h) {
+        int r = this.energyFunction.getRadius();
+        int to = path[h];
+        for (int i = Utils.max(h - r, 0); i <= Utils.min(h + r, this.height - 1); i++) {
+            to = Utils.max(to, path[i]);
+        }
+        return to + r;
+    }
+
+    // 从能量图的第一行中能量最小的位置开始，逐行选择下方能量最小的相邻列
+    protected int[] findSeam() {
+        int[] path = new int[this.height];
         int minIndex = Utils.argmin(this.map[0], this.width);
         path[0] = minIndex;
-        values[0] = this.image.get(0).remove(minIndex);
-        energyValues[0] = this.energy.get(0).remove(minIndex);
 
         for (int h = 1; h < this.height; h++) {
             int[] row = this.map[h];
@@ -218,14 +618,111 @@ public abstract class SeamCarverBase {
             }
             path[h] = minIndex;
         }
+        return path;
+    }
+
+    // 批量删除seam之后由子类更新能量和能量图，paths为删除前的坐标，按从左到右排列
+    protected abstract void seamsRemoved(int[][] paths);
+
+    // 逐个删除一个seam之后由子类更新能量和能量图，width为删除之前的宽度
+    protected abstract void seamRemoved(int[] path, int width);
+
+    // 删除一行中按升序排列的cols列，其余元素依次左移
+    private void compact(int[] plane, int offset, int[] cols) {
+        int write = offset + cols[0];
+        for (int i = 0; i < cols.length; i++) {
+            int start = cols[i] + 1;
+            int end = i + 1 < cols.length ? cols[i + 1] : this.width;
+            System.arraycopy(plane, offset + start, plane, write, end - start);
+            write += end - start;
+        }
+    }
 
-        // 串行删除路径
-        for (int h = 1; h < this.height; h++) {
-            values[h] = this.image.get(h).remove(path[h]);
-            energyValues[h] = this.energy.get(h).remove(path[h]);
+    // 按第一行的能量从小到大尝试各个起点，贪心地向下延伸，
+    // 每条seam在每一行都必须严格位于左右相邻的已选seam之间，因此它们互不相交也不交叉
+    protected int[][] findSeams(int k) {
+        long[] order = new long[this.width];
+        for (int w = 0; w < this.width; w++) {
+            order[w] = ((long) this.map[0][w] << 32) | w;
+        }
+        Arrays.sort(order);
+
+        TreeMap<Integer, int[]> selected = new TreeMap<>();
+        for (int i = 0; i < this.width && selected.size() < k; i++) {
+            int start = (int) order[i];
+            if (selected.containsKey(start))
+                continue;
+            Map.Entry<Integer, int[]> l = selected.lowerEntry(start);
+            Map.Entry<Integer, int[]> r = selected.higherEntry(start);
+            int[] left = l == null ? null : l.getValue();
+            int[] right = r == null ? null : r.getValue();
+
+            int[] path = new int[this.height];
+            path[0] = start;
+            int x = start;
+            for (int h = 1; h < this.height && x >= 0; h++) {
+                int lo = left == null ? -1 : left[h];
+                int hi = right == null ? this.width : right[h];
+                x = this.next(this.map[h], x, lo, hi);
+                path[h] = x;
+            }
+            if (x >= 0)
+                selected.put(start, path);
+        }
+        return selected.values().toArray(new int[0][]);
+    }
+
+    // 在(lo, hi)范围内选出x下方能量最小的相邻列，没有可选的列时返回-1
+    private int next(int[] row, int x, int lo, int hi) {
+        int from = Utils.max(x - 1, lo + 1), to = Utils.min(x + 1, hi - 1);
+        if (from > to)
+            return -1;
+        int min = row[from];
+        for (int w = from + 1; w <= to; w++) {
+            min = Utils.min(min, row[w]);
+        }
+        if (from == x - 1 && row[from] == min)
+            return from;
+        if (to == x + 1 && row[to] == min)
+            return to;
+        if (from <= x && x <= to && row[x] == min)
+            return x;
+        return row[from] == min ? from : to;
+    }
+
+    // 删除下一个seam
+    public boolean remove(boolean highlight, int color) {
+        if (this.width <= 1)
+            return false;
+        this.metrics.begin(SeamSample.Operation.REMOVE, this.width, this.height);
+        this.removeSeam(highlight, color);
+        this.metrics.end(1);
+        return true;
+    }
+
+    private void removeSeam(boolean highlight, int color) {
+        this.plan = null;
+        this.planner = null;
+        int[] path = this.findSeam();
+        this.metrics.mark(SeamSample.Phase.BACKTRACK);
+        int[] values = new int[this.height];
+        int[] energyValues = new int[this.height];
+
+        // 串行删除路径，每行原地左移
+        for (int h = 0; h < this.height; h++) {
+            int offset = h * this.maxWidth;
+            values[h] = removeAt(this.image, offset, path[h], this.width);
+            energyValues[h] = this.energy[offset + path[h]];
+            removeAt(this.gray, offset, path[h], this.width);
+            if (this.energy != this.gray)
+                removeAt(this.energy, offset, path[h], this.width);
         }
 
+        this.markDirty(path);
         this.width -= 1;
+        this.metrics.mark(SeamSample.Phase.SHIFT);
+        this.lastPath = path;
+        this.lastValues = values;
         if (this.update) {
             if (highlight) {
                 this.updateImage(path, color);
@@ -234,42 +731,98 @@ public abstract class SeamCarverBase {
             }
         }
         this.seams.push(path);
-        this.values.push(values);
         this.energyValues.push(energyValues);
-        return true;
+        this.seamRemoved(path, this.width + 1);
     }
 
     // 更新当前图像
     public void updateImage(boolean highlight, int color) {
-        if (highlight && !this.seams.isEmpty()) {
-            this.updateImage(this.seams.peek(), color);
+        if (highlight && this.lastPath != null) {
+            this.updateImage(this.lastPath, color);
         } else {
             this.updateImage();
         }
     }
 
-    // 更新当前图像以匹配图像的当前状态
+    // 更新当前图像以匹配图像的当前状态，实际的拷贝推迟到getImage
     protected void updateImage() {
-        for (int h = 0; h < this.height; h++) {
-            for (int w = 0; w < this.width; w++) {
-                this.data[h * this.maxWidth + w] = this.image.get(h).get(w);
-            }
-        }
-        // 调试输出
-        // System.out.println("updateImage: data = " +
-        // java.util.Arrays.toString(this.data));
+        this.highlight = null;
+        this.dirty = true;
     }
 
     // 更新当前图像以匹配当前状态，突出显示路径
     protected void updateImage(int[] path, int color) {
+        this.highlight = path;
+        this.highlightColor = color;
+        this.dirty = true;
+    }
+
+    // 记录seam所在行中从seam开始到当前宽度之间的像素需要刷新
+    protected void markDirty(int[] path) {
+        for (int h = 0; h < this.height; h++) {
+            if (path[h] < this.dirtyFrom[h])
+                this.dirtyFrom[h] = path[h];
+        }
+        this.dirtyTo = Utils.max(this.dirtyTo, this.width);
+        this.dirty = true;
+    }
+
+    // 将image中发生变化的部分拷贝到data和灰度图像中已经创建的那些，宽度缩小后空出的部分清零
+    private void flush() {
+        if (!this.dirty)
+            return;
+        this.metrics.begin(SeamSample.Operation.DISPLAY, this.width, this.height);
+        int[] old = this.highlighted, path = this.highlight;
+        int width = this.width;
+        int from = Integer.MAX_VALUE, to = Utils.max(this.dirtyTo, width);
         for (int h = 0; h < this.height; h++) {
-            for (int w = 0; w < this.width; w++) {
-                this.data[h * this.maxWidth + w] = this.image.get(h).get(w);
+            if (old != null) {
+                this.dirtyFrom[h] = Utils.min(this.dirtyFrom[h], old[h]);
+                to = Utils.max(to, old[h] + 1);
+            }
+            if (path != null) {
+                this.dirtyFrom[h] = Utils.min(this.dirtyFrom[h], path[h]);
+                to = Utils.max(to, path[h] + 1);
+            }
+            from = Utils.min(from, this.dirtyFrom[h]);
+        }
+        if (from < to) {
+            int limit = to;
+            int[] data = this.data, gray = this.grayData;
+            Utils.parallel(this.height, to - from, (start, end) -> {
+                for (int h = start; h < end; h++) {
+                    int offset = h * this.maxWidth, col = this.dirtyFrom[h];
+                    if (data != null) {
+                        if (col < width)
+                            System.arraycopy(this.image, offset + col, data, offset + col, width - col);
+                        if (Utils.max(col, width) < limit)
+                            Arrays.fill(data, offset + Utils.max(col, width), offset + limit, 0);
+                        if (path != null)
+                            data[offset + path[h]] = this.highlightColor; // 突出显示路径
+                    }
+                    if (gray != null) {
+                        for (int i = offset + col; i < offset + width; i++) {
+                            gray[i] = 0xFF000000 | this.gray[i] * 0x010101;
+                        }
+                        if (Utils.max(col, width) < limit)
+                            Arrays.fill(gray, offset + Utils.max(col, width), offset + limit, 0);
+                        if (path != null)
+                            gray[offset + path[h]] = this.highlightColor;
+                    }
+                }
+            });
+            Rectangle changed = new Rectangle(from, 0, to - from, this.height);
+            if (this.region.isEmpty()) {
+                this.region.setBounds(changed);
+            } else {
+                this.region.add(changed);
             }
-            this.data[h * this.maxWidth + path[h]] = color; // 突出显示路径
         }
-        // 调试输出
-        // System.out.println("updateImage with path: data = " +
-        // java.util.Arrays.toString(this.data));
+        Arrays.fill(this.dirtyFrom, Integer.MAX_VALUE);
+        this.dirtyTo = 0;
+        this.highlighted = path;
+        this.dirty = false;
+        this.metrics.mark(SeamSample.Phase.DISPLAY);
+        this.metrics.end(0);
     }
 }
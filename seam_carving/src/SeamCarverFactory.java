@@ -1,11 +1,49 @@
 import java.io.File;
+import java.io.IOException;
 
 enum EnergyType {
     BACKWARD,
-    FORWARD
+    FORWARD,
+    PYRAMID
 }
 
 public class SeamCarverFactory {
+    private long memoryBudget = Long.MAX_VALUE; // 创建carver时允许使用的字节数
+    private EnergyFunction energyFunction = StandardEnergy.SOBEL; // 反向能量和金字塔carver使用的能量函数
+
+    // 设置内存预算，超过预算时改用更省内存的金字塔carver，仍然超过时拒绝创建
+    public void setMemoryBudget(long bytes) {
+        if (bytes < 1)
+            throw new IllegalArgumentException("Invalid memory budget: " + bytes);
+        this.memoryBudget = bytes;
+    }
+
+    // 设置反向能量和金字塔carver计算能量的函数，前向能量不使用
+    public void setEnergyFunction(EnergyFunction function) {
+        if (function == null)
+            throw new IllegalArgumentException("Energy function is null");
+        this.energyFunction = function;
+    }
+
+    public EnergyFunction getEnergyFunction() {
+        return this.energyFunction;
+    }
+
+    // 估计carver创建时占用的字节数：图像、灰度和各子类的能量及能量图，每行只分配原始宽度
+    // 显示用的图像在第一次显示时才创建，插入seam时每行的空间最多再扩大到MAX_SCALE倍
+    public static long estimate(int width, int height, EnergyType type) {
+        long pixels = (long) width * height;
+        switch (type) {
+            case BACKWARD: // 图像、灰度、能量、能量图
+                return pixels * 16;
+            case FORWARD: // 图像、灰度、掩码、累计代价、每个像素一字节的来源
+                return pixels * 17;
+            case PYRAMID: // 图像、灰度、能量，以及各层降采样的能量
+                return pixels * 12 + pixels * 4 / 3;
+            default:
+                throw new IllegalArgumentException("Invalid EnergyType");
+        }
+    }
 
     public SeamCarver create(File file, boolean horizontal, EnergyType type) {
         return this.create(Utils.readImage(file), horizontal, type);
@@ -15,15 +53,81 @@ public class SeamCarverFactory {
         return this.create(Utils.readImage(filename), horizontal, type);
     }
 
-    private SeamCarver create(int[][] image, boolean horizontal, EnergyType type) {
-        if (horizontal) {
-            image = Utils.transpose(Utils.mirror(image));
+    // 预先计算删除顺序，之后可以直接调整到任意宽度
+    // 如果已经有同一图像的缓存文件则直接映射使用，否则计算后写入缓存
+    // 内存不够而改用PYRAMID时按实际使用的类型缓存，近似的顺序不会被当作所要求类型的结果
+    public SeamCarverIndex createIndex(File file, boolean horizontal, EnergyType type) {
+        File cache = SeamIndexFile.cacheFile(file, horizontal, type, this.energyFunction);
+        SeamCarverIndex index = SeamIndexFile.read(cache, file, horizontal, type);
+        if (index != null)
+            return index;
+        int[][] image = Utils.readImage(file);
+        if (image == null)
+            throw new IllegalArgumentException("Cannot read image");
+        EnergyType actual = this.fit(image[0].length, image.length, type);
+        if (actual != type) {
+            cache = SeamIndexFile.cacheFile(file, horizontal, actual, this.energyFunction);
+            index = SeamIndexFile.read(cache, file, horizontal, actual);
+            if (index != null)
+                return index;
+        }
+        index = new SeamCarverIndex((SeamCarverBase) this.create(image, horizontal, actual));
+        try {
+            SeamIndexFile.write(cache, file, horizontal, actual, index);
+        } catch (IOException ignored) {
+        }
+        return index;
+    }
+
+    // 估计的内存超过预算时改用PYRAMID，只有PYRAMID确实更小并且不超过预算时才改用，否则抛出异常
+    private EnergyType fit(int width, int height, EnergyType type) {
+        long needed = estimate(width, height, type);
+        if (needed <= this.memoryBudget)
+            return type;
+        long pyramid = estimate(width, height, EnergyType.PYRAMID);
+        if (pyramid < needed && pyramid <= this.memoryBudget)
+            return EnergyType.PYRAMID;
+        throw new IllegalArgumentException("Image " + width + " x " + height + " needs about " +
+                (Math.min(needed, pyramid) >> 20) + " MB, over the memory budget");
+    }
+
+    // 与create相同，但carver的类型、方向和能量函数与要创建的都相同时载入image，复用它的各平面
+    // carver可以为null，预算使创建的类型改变时也重新创建
+    public SeamCarverBase reuse(SeamCarverBase carver, int[][] image, boolean horizontal, EnergyType type) {
+        if (image == null)
+            throw new IllegalArgumentException("Cannot read image");
+        EnergyType actual = this.fit(image[0].length, image.length, type);
+        if (carver != null && carver.isHorizontal() == horizontal && matches(carver, actual)) {
+            carver.load(image);
+            return carver;
         }
+        return (SeamCarverBase) this.create(image, horizontal, actual);
+    }
+
+    private boolean matches(SeamCarverBase carver, EnergyType type) {
         switch (type) {
             case BACKWARD:
-                return new SeamCarverBackward(image);
+                return carver instanceof SeamCarverBackward && carver.energyFunction == this.energyFunction;
+            case FORWARD:
+                return carver instanceof SeamCarverForward;
+            case PYRAMID:
+                return carver instanceof SeamCarverPyramid && carver.energyFunction == this.energyFunction;
+            default:
+                return false;
+        }
+    }
+
+    // 水平carver在载入时直接旋转图像，image本身不会被修改
+    public SeamCarver create(int[][] image, boolean horizontal, EnergyType type) {
+        if (image == null)
+            throw new IllegalArgumentException("Cannot read image");
+        switch (this.fit(image[0].length, image.length, type)) {
+            case BACKWARD:
+                return new SeamCarverBackward(image, horizontal, this.energyFunction);
             case FORWARD:
-                return new SeamCarverForward(image);
+                return new SeamCarverForward(image, horizontal);
+            case PYRAMID:
+                return new SeamCarverPyramid(image, horizontal, this.energyFunction);
             default:
                 throw new IllegalArgumentException("Invalid EnergyType");
         }
@@ -1,79 +1,209 @@
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
 
-// 使用反向能量实现seam carve
+// 使用前向能量实现seam carve
+// 能量图map自上而下存储到每个像素为止的最小累计代价，moves记录每个像素来自上一行的哪一列，
+// 因此找seam只需从最后一行的最小值沿moves向上走一遍
 public class SeamCarverForward extends SeamCarverBase implements SeamCarver {
 
-    private final int[][] minimums;
+    static final int MASK = 1 << 10; // 涂抹保护或删除的区域时加到像素代价上的值，大于任何一种走法的代价
+
+    private byte[][] moves; // 每个像素在最小代价路径上相对上一行的列偏移，-1、0或1
 
     public SeamCarverForward(int[][] image) {
-        super(image);
-        int[][] gray = Utils.grayscale(image);
-        // 前向能量雕刻的能量图是原始图像的灰度版本
-        this.energy = new ArrayList<>(this.height);
-        for (int h = 0; h < this.height; h++) {
-            this.energy.add(new ArrayList<>(this.width));
+        this(image, false);
+    }
+
+    public SeamCarverForward(int[][] image, boolean horizontal) {
+        super(image, horizontal);
+        // 代价由基类灰度图像中相邻像素的灰度差得到，不使用EnergyFunction
+        // 能量平面只存放涂抹的掩码，加到被涂抹像素自身的代价上，不修改灰度，也不改变相邻像素的代价
+        this.energy = new int[this.height * this.maxWidth];
+
+        this.map = new int[this.height][this.maxWidth];
+        this.moves = new byte[this.height][this.maxWidth];
+        this.energyMap();
+    }
+
+    // 掩码随新图像清零，累计代价和来源的行数和长度不变时复用
+    public void load(int[][] image) {
+        super.load(image);
+        if (this.energy.length == this.image.length) {
+            Arrays.fill(this.energy, 0);
+        } else {
+            this.energy = new int[this.image.length];
         }
+        this.map = this.rows(this.map);
+        if (this.moves.length != this.height || this.moves[0].length != this.maxWidth)
+            this.moves = new byte[this.height][this.maxWidth];
+        this.energyMap();
+    }
 
-        Utils.parallel((cpu, cpus) -> {
-            for (int h = cpu; h < this.height; h += cpus) {
-                for (int w = 0; w < this.width; w++) {
-                    this.energy.get(h).add(gray[h][w]);
-                }
-            }
-        });
+    protected void seamInserted(int[] path, int width) {
+        this.energyMap();
+    }
 
-        this.minimums = new int[this.height][this.width];
+    protected void seamRemoved(int[] path, int width) {
         this.energyMap();
     }
 
-    public boolean add(boolean highlight, int color) {
-        boolean valid = super.add(highlight, color);
-        if (valid) this.energyMap();
-        return valid;
+    protected void seamsRemoved(int[][] paths) {
+        this.energyMap();
+    }
+
+    protected void seamsInserted(int[][] paths) {
+        this.energyMap();
+    }
+
+    protected void grow(int stride) {
+        super.grow(stride);
+        for (int h = 0; h < this.height; h++) {
+            this.moves[h] = Arrays.copyOf(this.moves[h], stride);
+        }
+    }
+
+    protected SeamCarverBase scratch(int[][] image) {
+        return new SeamCarverForward(image);
+    }
+
+    // 从最后一行累计代价最小的像素沿moves回溯
+    protected int[] findSeam() {
+        int[] path = new int[this.height];
+        int x = Utils.argmin(this.map[this.height - 1], this.width);
+        for (int h = this.height - 1; h > 0; h--) {
+            path[h] = x;
+            x += this.moves[h][x];
+        }
+        path[0] = x;
+        return path;
+    }
+
+    // 按最后一行的累计代价从小到大尝试各个终点，沿moves回溯，
+    // 只保留每一行都严格位于左右相邻的已选seam之间的路径，因此它们互不相交也不交叉
+    protected int[][] findSeams(int k) {
+        int[] last = this.map[this.height - 1];
+        long[] order = new long[this.width];
+        for (int w = 0; w < this.width; w++) {
+            order[w] = ((long) last[w] << 32) | w;
+        }
+        Arrays.sort(order);
+
+        TreeMap<Integer, int[]> selected = new TreeMap<>();
+        for (int i = 0; i < this.width && selected.size() < k; i++) {
+            int end = (int) order[i];
+            Map.Entry<Integer, int[]> l = selected.lowerEntry(end);
+            Map.Entry<Integer, int[]> r = selected.higherEntry(end);
+            int[] left = l == null ? null : l.getValue();
+            int[] right = r == null ? null : r.getValue();
+
+            int[] path = new int[this.height];
+            int x = end;
+            int h = this.height - 1;
+            for (; h >= 0; h--) {
+                if ((left != null && x <= left[h]) || (right != null && x >= right[h]))
+                    break;
+                path[h] = x;
+                if (h > 0)
+                    x += this.moves[h][x];
+            }
+            if (h < 0)
+                selected.put(end, path);
+        }
+        return selected.values().toArray(new int[0][]);
     }
 
-    public boolean remove(boolean highlight, int color) {
-        boolean valid = super.remove(highlight, color);
-        if (valid) this.energyMap();
-        return valid;
+    // 从灰度图像创建能量图，也供基准测试直接调用
+    void energyMap() {
+        this.firstRow();
+        if (this.parallel) {
+            this.energyMapParallel();
+        } else {
+            for (int h = 1; h < this.height; h++) {
+                this.energyRow(h, 0, this.width, this.map[h - 1], this.map[h], this.moves[h]);
+            }
+        }
+        this.metrics.mark(SeamSample.Phase.MAP);
     }
 
-    // 从梯度图像创建能量图
-    private void energyMap() {
+    // 第一行只有竖直走法的代价，即左右邻居的灰度差
+    private void firstRow() {
+        int[] gray = this.gray, mask = this.energy, row = this.map[0];
+        int last = this.width - 1;
         for (int w = 0; w < this.width; w++) {
-            int left = Utils.mod(w - 1, this.width);
-            int right = Utils.mod(w + 1, this.width);
+            row[w] = Math.abs(gray[Utils.min(w + 1, last)] - gray[Utils.max(w - 1, 0)]) + mask[w];
+        }
+    }
 
-            int cU = Math.abs(this.energy.get(0).get(right) - this.energy.get(0).get(left));
-            this.minimums[0][w] = 0;
-            this.map[0][w] = cU;
+    // 按波前并行计算能量图，做法与SeamCarverBackward相同，只是方向自上而下
+    private void energyMapParallel() {
+        for (int h0 = 0; h0 < this.height - 1; h0 += BAND) {
+            int top = h0, rows = Utils.min(BAND, this.height - 1 - h0);
+            Utils.parallel(this.width, rows, (from, to) -> this.tile(top, rows, from, to));
         }
-        for (int h = 1; h < this.height; h++) {
-            for (int w = 0; w < this.width; w++) {
-                int left = Utils.mod(w - 1, this.width);
-                int right = Utils.mod(w + 1, this.width);
-
-                int cU = Math.abs(this.energy.get(h).get(right) - this.energy.get(h).get(left));
-                int cL = Math.abs(this.energy.get(h - 1).get(w) - this.energy.get(h).get(left)) + cU;
-                int cR = Math.abs(this.energy.get(h - 1).get(w) - this.energy.get(h).get(right)) + cU;
-
-                int mU = this.minimums[h - 1][w] + cU;
-                int mL = this.minimums[h - 1][left] + cL;
-                int mR = this.minimums[h - 1][right] + cR;
-
-                int min = Utils.min(mU, mL, mR);
-                int cMin;
-                if (min == mU) {
-                    cMin = cU;
-                } else if (min == mL) {
-                    cMin = cL;
-                } else {
-                    cMin = cR;
-                }
-
-                this.minimums[h][w] = min;
-                this.map[h][w] = cMin;
+    }
+
+    // 计算top下方rows行中[from, to)列的累计代价和来源，边界列在缓冲区中重复计算
+    private void tile(int top, int rows, int from, int to) {
+        Scratch scratch = this.scratch();
+        int[] above = this.map[top];
+        for (int k = 1; k <= rows; k++) {
+            int h = top + k, ghost = rows - k;
+            int lo = Utils.max(from - ghost, 0), hi = Utils.min(to + ghost, this.width);
+            int[] row = ghost == 0 ? this.map[h] : scratch.rows[k & 1];
+            byte[] moves = ghost == 0 ? this.moves[h] : scratch.moves;
+            this.energyRow(h, lo, hi, above, row, moves);
+            if (ghost > 0) {
+                System.arraycopy(row, from, this.map[h], from, to - from);
+                System.arraycopy(moves, from, this.moves[h], from, to - from);
             }
+            above = row;
+        }
+    }
+
+    // 根据上一行的累计代价above计算第h行[from, to)列的累计代价和来源
+    // 竖直走法的代价cU是左右邻居的灰度差，从左上或右上走来时再加上新相邻的两个像素的灰度差，
+    // 边界处缺少的邻居用边界像素本身代替，第0列从左上方、最后一列从右上方走来的代价加上INF
+    // 来源由差的符号位算出，代价相同时依次优先正上方、左上方、右上方，循环中没有分支
+    // 三种走法都经过当前像素，掩码只加到最小值上，不影响来源
+    private void energyRow(int h, int from, int to, int[] above, int[] row, byte[] moves) {
+        int[] gray = this.gray, mask = this.energy;
+        int offset = h * this.maxWidth, up = offset - this.maxWidth, last = this.width - 1;
+        for (int w = from; w < to; w++) {
+            int wl = Utils.max(w - 1, 0), wr = Utils.min(w + 1, last);
+            int l = gray[offset + wl], r = gray[offset + wr], u = gray[up + w];
+            int cU = Math.abs(r - l);
+            int mU = above[w] + cU;
+            int mL = above[wl] + cU + Math.abs(u - l) + (((w - 1) >> 31) & INF);
+            int mR = above[wr] + cU + Math.abs(u - r) + (((last - w - 1) >> 31) & INF);
+            int lt = (mL - mU) >>> 31, rt = (mR - mU) >>> 31, rl = (mR - mL) >>> 31;
+            row[w] = Math.min(Math.min(mU, mL), mR) + mask[offset + w];
+            moves[w] = (byte) ((rt & rl) - (lt & (rl ^ 1)));
+        }
+    }
+
+    // 当前线程的缓冲区，宽度不够时重新分配
+    private Scratch scratch() {
+        Scratch scratch = SCRATCH.get();
+        if (scratch.moves.length < this.width) {
+            scratch = new Scratch(this.maxWidth);
+            SCRATCH.set(scratch);
         }
+        return scratch;
     }
+
+    // 并行计算时每个线程各自的两行累计代价和一行来源
+    private static class Scratch {
+        final int[][] rows;
+        final byte[] moves;
+
+        Scratch(int width) {
+            this.rows = new int[2][width];
+            this.moves = new byte[width];
+        }
+    }
+
+    private static final int INF = 1 << 30; // 不存在的走法的代价，加上累计代价也不会溢出
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(() -> new Scratch(0));
 }
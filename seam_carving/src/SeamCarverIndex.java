@@ -0,0 +1,268 @@
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.Buffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+// 预先计算完整的seam删除顺序，之后可以直接得到任意宽度的图像（Avidan & Shamir的retargetable image）
+public class SeamCarverIndex implements SeamCarver {
+    protected final boolean horizontal;
+    protected final int height;
+    protected final int maxWidth; // 原始宽度，同时也是data每行的步长
+    protected int width;
+    protected boolean update;
+    protected final IntBuffer pixels; // 原始图像，按行存储，可以来自内存或映射的文件
+    protected final Buffer order; // 每个像素在第几步被删除，始终保留的像素为maxWidth - 1，IntBuffer或CharBuffer
+    protected final int[] data; // 存储当前图像的一维数组，即bufferedImage的像素
+    protected final BufferedImage bufferedImage; // 与data共享像素的图像
+    private BufferedImage grayImage; // 灰度显示用的图像，第一次请求时才创建
+    private int highlighted = -1; // 当前突出显示的seam对应的删除步数
+    private final SeamMetrics metrics = new SeamMetrics();
+
+    // 用给定的（尚未carve过的）carver删除所有seam，并根据记录的seam路径建立索引
+    public SeamCarverIndex(SeamCarverBase carver) {
+        this(carver.height, carver.width, carver.horizontal, IntBuffer.wrap(pixels(carver)), order(carver));
+    }
+
+    // 使用已经计算好的删除顺序
+    public SeamCarverIndex(int height, int width, boolean horizontal, IntBuffer pixels, Buffer order) {
+        if (!(order instanceof IntBuffer || order instanceof CharBuffer))
+            throw new IllegalArgumentException("Unsupported order buffer: " + order);
+        this.horizontal = horizontal;
+        this.height = height;
+        this.maxWidth = width;
+        this.width = width;
+        this.update = true;
+        this.pixels = pixels;
+        this.order = order;
+        this.bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        this.data = ((DataBufferInt) this.bufferedImage.getRaster().getDataBuffer()).getData();
+        this.setWidth(width);
+    }
+
+    private static int[] pixels(SeamCarverBase carver) {
+        int[] pixels = new int[carver.height * carver.width];
+        for (int h = 0; h < carver.height; h++) {
+            System.arraycopy(carver.image, h * carver.maxWidth, pixels, h * carver.width, carver.width);
+        }
+        return pixels;
+    }
+
+    private static IntBuffer order(SeamCarverBase carver) {
+        int width = carver.width;
+        int[] order = new int[carver.height * width];
+        carver.setUpdate(false);
+        carver.remove(width - 1, false, 0);
+        build(carver.seams.toArray(new int[0][]), order, carver.height, width);
+        return IntBuffer.wrap(order);
+    }
+
+    // 将按删除顺序记录的seam映射回原始坐标，seams[n][h]是第n步时第h行被删除的列
+    // 每行用树状数组记录仍然存在的原始列，第k个存在的列可以在O(log width)内找到
+    static void build(int[][] seams, int[] order, int height, int width) {
+        Arrays.fill(order, width - 1);
+        Utils.parallel(height, seams.length, (from, to) -> {
+            int[] tree = new int[width + 1];
+            int top = Integer.highestOneBit(width);
+            for (int h = from; h < to; h++) {
+                for (int i = 1; i <= width; i++) {
+                    tree[i] = i & -i; // 所有列都存在
+                }
+                for (int n = 0; n < seams.length; n++) {
+                    // 找到第seams[n][h] + 1个存在的列
+                    int k = seams[n][h] + 1, pos = 0;
+                    for (int step = top; step > 0; step >>= 1) {
+                        if (pos + step <= width && tree[pos + step] < k) {
+                            pos += step;
+                            k -= tree[pos];
+                        }
+                    }
+                    order[h * width + pos] = n;
+                    for (int i = pos + 1; i <= width; i += i & -i) {
+                        tree[i]--;
+                    }
+                }
+            }
+        });
+    }
+
+    public int getWidth(boolean isAdd) {
+        return this.maxWidth;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public boolean isHorizontal() {
+        return this.horizontal;
+    }
+
+    public int[] getImage() {
+        return this.data;
+    }
+
+    // 重新生成一次当前图像以去掉突出显示
+    public int[][] toImage() {
+        this.gather();
+        return Utils.toImage(this.data, this.width, this.height, this.maxWidth, this.horizontal);
+    }
+
+    public BufferedImage getBufferedImage() {
+        return this.bufferedImage;
+    }
+
+    // 宽度是直接调整的，不记录单个seam
+    public int[] getLastSeam() {
+        return null;
+    }
+
+    public int[] getLastValues() {
+        return null;
+    }
+
+    // 每次调整宽度都会重新生成整幅图像，灰度图像也每次从当前图像整幅转换
+    public BufferedImage getGrayImage() {
+        if (this.grayImage == null)
+            this.grayImage = new BufferedImage(this.maxWidth, this.height, BufferedImage.TYPE_INT_ARGB);
+        int[] gray = ((DataBufferInt) this.grayImage.getRaster().getDataBuffer()).getData();
+        Utils.parallel(this.height, this.maxWidth, (from, to) -> {
+            for (int i = from * this.maxWidth; i < to * this.maxWidth; i++) {
+                int pixel = this.data[i];
+                gray[i] = (pixel & 0xFF000000) | Utils.luma(pixel) * 0x010101;
+            }
+        });
+        return this.grayImage;
+    }
+
+    public Rectangle getDirtyRegion() {
+        return new Rectangle(0, 0, this.maxWidth, this.height);
+    }
+
+    public void setUpdate(boolean update) {
+        this.update = update;
+    }
+
+    // 删除顺序已经预先计算好，以下设置不再起作用
+    public void setParallel(boolean parallel) {
+    }
+
+    public void setBatchSize(int batchSize) {
+    }
+
+    public void setEnergy(int x, int y, int val) {
+    }
+
+    // 调整宽度只需要重新生成图像，耗时全部计入DISPLAY
+    public void setListener(SeamListener listener) {
+        this.metrics.setListener(listener);
+    }
+
+    // 直接得到宽度为width的图像，只需一次遍历
+    public void setWidth(int width) {
+        if (width < 1 || width > this.maxWidth)
+            throw new IllegalArgumentException("Invalid width: " + width);
+        this.width = width;
+        this.highlighted = -1;
+        this.gather();
+    }
+
+    public int add(int count, boolean highlight, int color) {
+        int added = Utils.max(Utils.min(count, this.maxWidth - this.width), 0);
+        if (added > 0)
+            this.resize(this.width + added, highlight, color);
+        return added;
+    }
+
+    public boolean add(boolean highlight, int color) {
+        return this.add(1, highlight, color) == 1;
+    }
+
+    public int remove(int count, boolean highlight, int color) {
+        int removed = Utils.max(Utils.min(count, this.width - 1), 0);
+        if (removed > 0)
+            this.resize(this.width - removed, highlight, color);
+        return removed;
+    }
+
+    public boolean remove(boolean highlight, int color) {
+        return this.remove(1, highlight, color) == 1;
+    }
+
+    // 突出显示最近一次被删除或恢复的seam
+    private void resize(int width, boolean highlight, int color) {
+        boolean remove = width < this.width;
+        this.metrics.begin(remove ? SeamSample.Operation.REMOVE : SeamSample.Operation.INSERT, this.width,
+                this.height);
+        int seams = Math.abs(width - this.width);
+        int step = remove ? this.maxWidth - width - 1 : this.maxWidth - width;
+        this.width = width;
+        this.highlighted = step;
+        if (this.update) {
+            this.updateImage(highlight, color);
+            this.metrics.mark(SeamSample.Phase.DISPLAY);
+        }
+        this.metrics.end(seams);
+    }
+
+    public void updateImage(boolean highlight, int color) {
+        this.gather();
+        if (highlight && this.highlighted >= 0)
+            this.highlight(this.highlighted, color);
+    }
+
+    // 保留删除步数不小于maxWidth - width的像素
+    private void gather() {
+        int min = this.maxWidth - this.width;
+        Utils.parallel(this.height, this.maxWidth, (from, to) -> {
+            int[] pixels = new int[this.maxWidth], order = new int[this.maxWidth];
+            for (int h = from; h < to; h++) {
+                this.readRow(h, pixels, order);
+                int out = h * this.maxWidth;
+                for (int i = 0; i < this.maxWidth; i++) {
+                    if (order[i] >= min)
+                        this.data[out++] = pixels[i];
+                }
+                Arrays.fill(this.data, out, (h + 1) * this.maxWidth, 0); // 清除已删除的部分
+            }
+        });
+    }
+
+    // 在当前图像中标出第step步删除的seam，已删除的seam标在其右侧的像素上
+    private void highlight(int step, int color) {
+        int min = this.maxWidth - this.width;
+        int[] order = new int[this.maxWidth];
+        for (int h = 0; h < this.height; h++) {
+            this.readRow(h, null, order);
+            int col = 0;
+            for (int i = 0; i < this.maxWidth; i++) {
+                if (order[i] == step)
+                    break;
+                if (order[i] >= min)
+                    col++;
+            }
+            this.data[h * this.maxWidth + Utils.min(col, this.width - 1)] = color;
+        }
+    }
+
+    // 读取第h行的像素和删除顺序
+    private void readRow(int h, int[] pixels, int[] order) {
+        int offset = h * this.maxWidth;
+        if (pixels != null)
+            this.pixels.get(offset, pixels, 0, this.maxWidth);
+        if (this.order instanceof IntBuffer) {
+            ((IntBuffer) this.order).get(offset, order, 0, this.maxWidth);
+        } else {
+            CharBuffer chars = (CharBuffer) this.order;
+            for (int i = 0; i < this.maxWidth; i++) {
+                order[i] = chars.get(offset + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+// 在降采样的能量图像上寻找seam，再逐层放大，只在投影路径附近的窄带内细化
+// 速度远快于完整分辨率的动态规划，但得到的seam不一定是能量最小的
+public class SeamCarverPyramid extends SeamCarverBase implements SeamCarver {
+    private static final int INF = Integer.MAX_VALUE / 2;
+    private static final int MIN_SIZE = 16; // 最粗一层的宽和高都不小于该值
+
+    private int levels; // 金字塔的最大层数，1表示在原始分辨率上完整计算
+    private int radius; // 细化时投影路径两侧搜索的列数
+
+    public SeamCarverPyramid(int[][] image) {
+        this(image, false);
+    }
+
+    public SeamCarverPyramid(int[][] image, boolean horizontal) {
+        this(image, horizontal, StandardEnergy.SOBEL);
+    }
+
+    public SeamCarverPyramid(int[][] image, boolean horizontal, EnergyFunction function) {
+        super(image, horizontal);
+        this.levels = 4;
+        this.radius = 2;
+        this.energyFunction = function;
+        this.energy = function.compute(this.gray, this.maxWidth, this.width, this.height);
+    }
+
+    public void load(int[][] image) {
+        super.load(image);
+        this.computeEnergy();
+    }
+
+    public void setLevels(int levels) {
+        if (levels < 1)
+            throw new IllegalArgumentException("Invalid level count: " + levels);
+        this.levels = levels;
+    }
+
+    public void setRadius(int radius) {
+        if (radius < 1)
+            throw new IllegalArgumentException("Invalid radius: " + radius);
+        this.radius = radius;
+    }
+
+    protected void seamInserted(int[] path, int width) {
+        this.refreshEnergy(path);
+    }
+
+    protected void seamRemoved(int[] path, int width) {
+        this.refreshEnergy(path);
+    }
+
+    // 金字塔搜索每次只得到一条seam，批量删除退化为逐个删除
+    protected int[][] findSeams(int k) {
+        return new int[][] { this.findSeam() };
+    }
+
+    protected void seamsRemoved(int[][] paths) {
+        this.refreshEnergy(paths[0]);
+    }
+
+    protected void seamsInserted(int[][] paths) {
+        for (int[] path : paths) {
+            this.refreshEnergy(path);
+        }
+    }
+
+    protected SeamCarverBase scratch(int[][] image) {
+        SeamCarverPyramid carver = new SeamCarverPyramid(image, false, this.energyFunction);
+        carver.setLevels(this.levels);
+        carver.setRadius(this.radius);
+        return carver;
+    }
+
+    protected int[] findSeam() {
+        // 第0层直接使用能量图像，之后每层将2x2的块求和
+        int count = 1;
+        int[] widths = new int[this.levels], heights = new int[this.levels];
+        int[][] planes = new int[this.levels][];
+        widths[0] = this.width;
+        heights[0] = this.height;
+        while (count < this.levels && widths[count - 1] >= 2 * MIN_SIZE && heights[count - 1] >= 2 * MIN_SIZE) {
+            widths[count] = (widths[count - 1] + 1) / 2;
+            heights[count] = (heights[count - 1] + 1) / 2;
+            count++;
+        }
+        for (int l = 1; l < count; l++) {
+            planes[l] = this.downsample(l == 1 ? this.energy : planes[l - 1], l == 1 ? this.maxWidth : widths[l - 1],
+                    widths[l - 1], heights[l - 1], widths[l], heights[l]);
+        }
+
+        // 在最粗的一层上完整计算
+        int top = count - 1;
+        int[] center = null;
+        for (int l = top; l >= 0; l--) {
+            int[] plane = l == 0 ? this.energy : planes[l];
+            int stride = l == 0 ? this.maxWidth : widths[l];
+            int radius = l == top ? widths[l] : this.radius;
+            int[] projected = new int[heights[l]];
+            for (int h = 0; h < heights[l]; h++) {
+                // 上一层的一列对应本层的两列，取其中间
+                projected[h] = center == null ? 0 : Utils.min(2 * center[h / 2], widths[l] - 1);
+            }
+            center = this.band(plane, stride, widths[l], heights[l], projected, radius);
+        }
+        // 每层的窄带内动态规划和回溯交替进行，全部计入能量图
+        this.metrics.mark(SeamSample.Phase.MAP);
+        return center;
+    }
+
+    // 将一层能量中的2x2块求和得到下一层
+    private int[] downsample(int[] plane, int stride, int width, int height, int outWidth, int outHeight) {
+        int[] result = new int[outWidth * outHeight];
+        Utils.parallel(outHeight, outWidth, (from, to) -> {
+            for (int h = from; h < to; h++) {
+                int r0 = 2 * h * stride, r1 = 2 * h + 1 < height ? r0 + stride : r0;
+                int offset = h * outWidth;
+                for (int w = 0; w < outWidth; w++) {
+                    int c0 = 2 * w, c1 = 2 * w + 1 < width ? c0 + 1 : c0;
+                    result[offset + w] = plane[r0 + c0] + plane[r0 + c1] + plane[r1 + c0] + plane[r1 + c1];
+                }
+            }
+        });
+        return result;
+    }
+
+    // 在每行[center - radius, center + radius + 1]的窄带内做动态规划，返回窄带内能量最小的路径
+    // radius不小于宽度时即为完整的动态规划
+    private int[] band(int[] plane, int stride, int width, int height, int[] center, int radius) {
+        int size = Utils.min(2 * radius + 2, width);
+        int[] lo = new int[height];
+        int[] cost = new int[height * size];
+        for (int h = 0; h < height; h++) {
+            lo[h] = Utils.max(Utils.min(center[h] - radius, width - size), 0);
+        }
+        // 从底部向上计算窄带内的累计能量，窄带外视为无穷大
+        for (int h = height - 1; h >= 0; h--) {
+            int offset = h * stride, row = h * size;
+            for (int i = 0; i < size; i++) {
+                int w = lo[h] + i;
+                int below = 0;
+                if (h < height - 1) {
+                    below = INF;
+                    int j = w - lo[h + 1], next = (h + 1) * size;
+                    for (int d = -1; d <= 1; d++) {
+                        if (j + d >= 0 && j + d < size)
+                            below = Utils.min(below, cost[next + j + d]);
+                    }
+                }
+                cost[row + i] = below >= INF ? INF : plane[offset + w] + below;
+            }
+        }
+        // 从顶部能量最小的位置开始回溯
+        int[] path = new int[height];
+        int x = Utils.argmin(cost, size);
+        path[0] = lo[0] + x;
+        for (int h = 1; h < height; h++) {
+            int w = path[h - 1], row = h * size;
+            int best = -1;
+            for (int d = -1; d <= 1; d++) {
+                int j = w + d - lo[h];
+                if (j >= 0 && j < size && (best < 0 || cost[row + j] < cost[row + best]))
+                    best = j;
+            }
+            path[h] = lo[h] + best;
+        }
+        return path;
+    }
+}
@@ -0,0 +1,394 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// 核外（out-of-core）的竖直seam删除，用于比堆内存还大的图像
+// 像素、灰度和回溯方向都保存在内存映射的临时文件中，每段（strip）映射若干行，不超过STRIP_BYTES
+// 动态规划从底部向上逐行进行，堆上只保留两行累计能量和三行灰度，能量在读取灰度时现算
+// 每个像素的回溯方向只占一个字节，删除seam时逐行读出、压缩、写回，堆上的数据始终是O(width + height)
+// 与SeamCarverBackward使用相同的能量和选择规则，逐个删除时得到的seam完全相同
+public class SeamCarverStrip implements Closeable {
+    private static final long STRIP_BYTES = 1L << 28; // 每段映射的最大字节数
+    private static final long READ_BYTES = 1L << 26; // 读取图像时每次解码的最大像素字节数
+
+    // 按行存储、每行步长为stride的平面，分段映射到同一个临时文件
+    private static class Plane implements Closeable {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final int stride;
+        private final int rows; // 每段的行数
+        private final ByteBuffer[] strips;
+        private final IntBuffer[] ints; // 每个元素为int时strips的视图
+
+        Plane(File dir, String prefix, int stride, int height, int bytes) throws IOException {
+            this.file = File.createTempFile(prefix, ".strip", dir);
+            this.file.deleteOnExit();
+            this.raf = new RandomAccessFile(this.file, "rw");
+            this.stride = stride;
+            long rowBytes = (long) stride * bytes;
+            this.rows = (int) Math.max(1, Math.min(height, STRIP_BYTES / rowBytes));
+            int count = (height + this.rows - 1) / this.rows;
+            this.strips = new ByteBuffer[count];
+            this.ints = bytes == 4 ? new IntBuffer[count] : null;
+            FileChannel channel = this.raf.getChannel();
+            for (int i = 0; i < count; i++) {
+                long size = Math.min(this.rows, height - (long) i * this.rows) * rowBytes;
+                this.strips[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * this.rows * rowBytes, size)
+                        .order(ByteOrder.nativeOrder());
+                if (this.ints != null)
+                    this.ints[i] = this.strips[i].asIntBuffer();
+            }
+        }
+
+        void get(int h, int[] row, int length) {
+            this.ints[h / this.rows].get(h % this.rows * this.stride, row, 0, length);
+        }
+
+        void put(int h, int[] row, int length) {
+            this.ints[h / this.rows].put(h % this.rows * this.stride, row, 0, length);
+        }
+
+        void get(int h, byte[] row, int length) {
+            this.strips[h / this.rows].get(h % this.rows * this.stride, row, 0, length);
+        }
+
+        void put(int h, byte[] row, int length) {
+            this.strips[h / this.rows].put(h % this.rows * this.stride, row, 0, length);
+        }
+
+        byte get(int h, int w) {
+            return this.strips[h / this.rows].get(h % this.rows * this.stride + w);
+        }
+
+        // 映射的缓冲在被回收之前不会释放，文件在退出时删除
+        public void close() throws IOException {
+            this.raf.close();
+            this.file.delete();
+        }
+    }
+
+    private final int height;
+    private int width;
+    private int batchSize;
+    private final Plane pixels;
+    private final Plane gray; // 灰度，每个像素一个字节
+    private final Plane moves; // 每个像素在下一行中选择的列相对本列的偏移，-1、0或1
+    private int[] cost; // 最近一次计算的第一行累计能量
+
+    // 在dir中创建临时文件，dir为null时使用系统的临时目录
+    public SeamCarverStrip(int width, int height, File dir) throws IOException {
+        if (width < 1 || height < 1)
+            throw new IllegalArgumentException("Invalid size: " + width + " x " + height);
+        this.width = width;
+        this.height = height;
+        this.batchSize = 1;
+        this.pixels = new Plane(dir, "pixels", width, height, 4);
+        this.gray = new Plane(dir, "gray", width, height, 1);
+        this.moves = new Plane(dir, "moves", width, height, 1);
+    }
+
+    // 分段解码图像写入临时文件，每次只在堆上保留不超过READ_BYTES的像素
+    // PNG等顺序格式每段都要从头解码，总的解码时间与段数成正比
+    public static SeamCarverStrip read(File file, File dir) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null)
+                throw new IOException("Cannot open " + file);
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext())
+                throw new IOException("Unsupported image format: " + file);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0), height = reader.getHeight(0);
+                SeamCarverStrip carver = new SeamCarverStrip(width, height, dir);
+                try {
+                    int rows = (int) Math.max(1, Math.min(height, READ_BYTES / (4L * width)));
+                    int[] row = new int[width];
+                    byte[] luma = new byte[width];
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    for (int y = 0; y < height; y += rows) {
+                        int n = Utils.min(rows, height - y);
+                        param.setSourceRegion(new Rectangle(0, y, width, n));
+                        BufferedImage strip = reader.read(0, param);
+                        for (int i = 0; i < n; i++) {
+                            strip.getRGB(0, i, width, 1, row, 0, width);
+                            carver.setRow(y + i, row, luma);
+                        }
+                    }
+                    return carver;
+                } catch (IOException | RuntimeException e) {
+                    carver.close();
+                    throw e;
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // 写入第h行的像素和灰度，luma为长度至少为width的缓冲
+    private void setRow(int h, int[] row, byte[] luma) {
+        for (int w = 0; w < this.width; w++) {
+            luma[w] = (byte) Utils.luma(row[w]);
+        }
+        this.pixels.put(h, row, this.width);
+        this.gray.put(h, luma, this.width);
+    }
+
+    // 估计carve时堆上占用的字节数：读取时解码的一段图像，以及动态规划和删除时使用的若干行
+    public static long heap(int width, int height) {
+        long strip = Math.min(READ_BYTES, 4L * width * height);
+        return strip * 2 + 64L * width + 4L * height;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    // 每次计算能量图后最多删除的seam个数，1表示逐个删除
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        this.batchSize = batchSize;
+    }
+
+    // 删除count个竖直seam，返回实际删除的个数
+    public int remove(int count) {
+        int removed = 0;
+        while (removed < count && this.width > 1) {
+            this.energyMap();
+            int[][] paths = this.findSeams(Utils.min(this.batchSize, Utils.min(count - removed, this.width - 1)));
+            this.removeSeams(paths);
+            removed += paths.length;
+        }
+        return removed;
+    }
+
+    // 从底部向上计算累计能量，记录每个像素在下一行中选择的列
+    // 下一行中的选择规则与SeamCarverBase.findSeam相同
+    private void energyMap() {
+        int width = this.width, last = width - 1;
+        int[] below = new int[width], row = new int[width];
+        int[] window = new int[3 * width]; // 上、中、下三行灰度，用于计算Sobel梯度
+        byte[] luma = new byte[width], move = new byte[width];
+        this.grayRow(this.height - 1, window, width, luma);
+        System.arraycopy(window, width, window, 2 * width, width);
+        for (int h = this.height - 1; h >= 0; h--) {
+            if (h > 0) {
+                this.grayRow(h - 1, window, 0, luma);
+            } else {
+                System.arraycopy(window, width, window, 0, width);
+            }
+            boolean bottom = h == this.height - 1;
+            int[] next = below, current = row;
+            Utils.parallel(width, 1, (from, to) -> {
+                for (int w = from; w < to; w++) {
+                    int energy = Utils.sobel(window, width, width, 3, w, 1);
+                    if (bottom) {
+                        current[w] = energy;
+                        continue;
+                    }
+                    int best = w;
+                    if (last == 0) {
+                        best = 0;
+                    } else if (w == 0) {
+                        best = next[0] <= next[1] ? 0 : 1;
+                    } else if (w == last) {
+                        best = next[last - 1] <= next[last] ? last - 1 : last;
+                    } else {
+                        int min = Utils.min(next[w - 1], next[w], next[w + 1]);
+                        if (next[w - 1] == min)
+                            best = w - 1;
+                        else if (next[w + 1] == min)
+                            best = w + 1;
+                    }
+                    current[w] = energy + next[best];
+                    move[w] = (byte) (best - w);
+                }
+            });
+            if (!bottom)
+                this.moves.put(h, move, width);
+            // 三行灰度整体下移一行
+            System.arraycopy(window, width, window, 2 * width, width);
+            System.arraycopy(window, 0, window, width, width);
+            row = below;
+            below = current;
+        }
+        this.cost = below;
+    }
+
+    // 将第h行的灰度读到window中从offset开始的位置
+    private void grayRow(int h, int[] window, int offset, byte[] luma) {
+        this.gray.get(h, luma, this.width);
+        for (int w = 0; w < this.width; w++) {
+            window[offset + w] = luma[w] & 0xFF;
+        }
+    }
+
+    // 按第一行累计能量从小到大回溯，取出最多k个seam
+    // 与内存中的carver相同，每条seam在每一行都必须严格位于左右相邻的已选seam之间，因此它们互不相交也不交叉
+    private int[][] findSeams(int k) {
+        long[] order = new long[this.width];
+        for (int w = 0; w < this.width; w++) {
+            order[w] = ((long) this.cost[w] << 32) | w;
+        }
+        Arrays.sort(order);
+        TreeMap<Integer, int[]> selected = new TreeMap<>();
+        int attempts = Utils.min(this.width, 8 * k); // 回溯路径会汇合，多试几个起点
+        for (int i = 0; i < attempts && selected.size() < k; i++) {
+            int start = (int) order[i];
+            Map.Entry<Integer, int[]> l = selected.lowerEntry(start);
+            Map.Entry<Integer, int[]> r = selected.higherEntry(start);
+            int[] left = l == null ? null : l.getValue();
+            int[] right = r == null ? null : r.getValue();
+
+            int[] path = new int[this.height];
+            path[0] = start;
+            boolean free = true;
+            for (int h = 0; h < this.height && free; h++) {
+                if (h > 0)
+                    path[h] = path[h - 1] + this.moves.get(h - 1, path[h - 1]);
+                free = (left == null || left[h] < path[h]) && (right == null || path[h] < right[h]);
+            }
+            if (free)
+                selected.put(start, path);
+        }
+        return selected.values().toArray(new int[0][]);
+    }
+
+    // 逐行读出像素和灰度，删除各seam所在的列后写回
+    private void removeSeams(int[][] paths) {
+        int n = paths.length, width = this.width;
+        Utils.parallel(this.height, width, (from, to) -> {
+            int[] row = new int[width], cols = new int[n];
+            byte[] luma = new byte[width];
+            for (int h = from; h < to; h++) {
+                for (int i = 0; i < n; i++) {
+                    cols[i] = paths[i][h];
+                }
+                Arrays.sort(cols);
+                this.pixels.get(h, row, width);
+                this.gray.get(h, luma, width);
+                int write = cols[0];
+                for (int i = 0; i < n; i++) {
+                    int start = cols[i] + 1, end = i + 1 < n ? cols[i + 1] : width;
+                    System.arraycopy(row, start, row, write, end - start);
+                    System.arraycopy(luma, start, luma, write, end - start);
+                    write += end - start;
+                }
+                this.pixels.put(h, row, width - n);
+                this.gray.put(h, luma, width - n);
+            }
+        });
+        this.width -= n;
+    }
+
+    // 逐行写出PNG（RGB，每行使用Sub过滤），堆上只保留一行
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                1 << 16))) {
+            out.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' });
+            ByteBuffer header = ByteBuffer.allocate(13);
+            header.putInt(this.width).putInt(this.height).put((byte) 8).put((byte) 2).put((byte) 0)
+                    .put((byte) 0).put((byte) 0);
+            chunk(out, "IHDR", header.array(), 13);
+
+            int[] row = new int[this.width];
+            byte[] line = new byte[1 + 3 * this.width];
+            line[0] = 1; // Sub：每个字节减去左侧像素的同一分量
+            OutputStream idat = new OutputStream() {
+                private final byte[] buffer = new byte[1 << 16];
+                private int size;
+
+                public void write(int b) throws IOException {
+                    this.buffer[this.size++] = (byte) b;
+                    if (this.size == this.buffer.length)
+                        this.flush();
+                }
+
+                public void write(byte[] b, int off, int len) throws IOException {
+                    while (len > 0) {
+                        int n = Math.min(len, this.buffer.length - this.size);
+                        System.arraycopy(b, off, this.buffer, this.size, n);
+                        this.size += n;
+                        off += n;
+                        len -= n;
+                        if (this.size == this.buffer.length)
+                            this.flush();
+                    }
+                }
+
+                public void flush() throws IOException {
+                    if (this.size > 0)
+                        chunk(out, "IDAT", this.buffer, this.size);
+                    this.size = 0;
+                }
+            };
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            try (DeflaterOutputStream zip = new DeflaterOutputStream(idat, deflater, 1 << 16)) {
+                for (int h = 0; h < this.height; h++) {
+                    this.pixels.get(h, row, this.width);
+                    int previous = 0;
+                    for (int w = 0; w < this.width; w++) {
+                        int pixel = row[w], i = 1 + 3 * w;
+                        line[i] = (byte) ((pixel >> 16) - (previous >> 16));
+                        line[i + 1] = (byte) ((pixel >> 8) - (previous >> 8));
+                        line[i + 2] = (byte) (pixel - previous);
+                        previous = pixel;
+                    }
+                    zip.write(line);
+                }
+                zip.finish();
+                idat.flush();
+            } finally {
+                deflater.end();
+            }
+            chunk(out, "IEND", new byte[0], 0);
+        }
+    }
+
+    // 写出一个PNG块：长度、类型、数据和CRC
+    private static void chunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] name = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    public void close() throws IOException {
+        this.pixels.close();
+        this.gray.close();
+        this.moves.close();
+    }
+}
@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// 一次操作中一个阶段的JFR事件，事件的持续时间就是这个阶段的耗时
+// 例如 java -XX:StartFlightRecording:filename=carve.jfr ... 之后用jfr print --events seamcarving.Phase查看
+@Name("seamcarving.Phase")
+@Label("Seam Carving Phase")
+@Category("Seam Carving")
+@Description("One phase of removing or inserting seams")
+public class SeamEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Width")
+    @Description("Width before the operation")
+    int width;
+
+    @Label("Height")
+    int height;
+}
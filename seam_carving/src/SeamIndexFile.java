@@ -0,0 +1,124 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+// SeamCarverIndex的磁盘格式，通过FileChannel.map映射后按需读取，不需要重新计算
+//
+// 文件头（小端序）：
+//   int  MAGIC、VERSION、height、width、flags（HORIZONTAL | SHORT_ORDER）、能量类型
+//   long 源文件的长度和修改时间，用于判断缓存是否过期
+// 之后依次是 height * width 个int像素和 height * width 个删除步数（宽度不超过65536时为char，否则为int）
+public class SeamIndexFile {
+    public static final int MAGIC = 0x53434958; // "SCIX"
+    public static final int VERSION = 1;
+    private static final int HEADER = 40;
+    private static final int HORIZONTAL = 1;
+    private static final int SHORT_ORDER = 2;
+
+    // 缓存文件的位置，默认与图像放在同一目录，可以通过 -Dseamcarving.cache 指定目录
+    public static File cacheFile(File source, boolean horizontal, EnergyType type) {
+        return cacheFile(source, horizontal, type, StandardEnergy.SOBEL);
+    }
+
+    // 删除顺序还取决于能量函数，默认的SOBEL以外的函数加在文件名中，前向能量不使用能量函数
+    public static File cacheFile(File source, boolean horizontal, EnergyType type, EnergyFunction function) {
+        String dir = System.getProperty("seamcarving.cache");
+        File parent = dir != null ? new File(dir) : source.getAbsoluteFile().getParentFile();
+        String energy = type.name().toLowerCase(Locale.ROOT);
+        if (type != EnergyType.FORWARD && function != StandardEnergy.SOBEL)
+            energy += "-" + function.name().toLowerCase(Locale.ROOT);
+        String name = source.getName() + "." + (horizontal ? "h" : "v") + "." + energy + ".seams";
+        return new File(parent, name);
+    }
+
+    // 读取缓存的索引，文件不存在、格式不符或源文件已修改时返回null
+    public static SeamCarverIndex read(File cache, File source, boolean horizontal, EnergyType type) {
+        if (!cache.isFile())
+            return null;
+        try (RandomAccessFile file = new RandomAccessFile(cache, "r");
+                FileChannel channel = file.getChannel()) {
+            if (channel.size() < HEADER)
+                return null;
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            int magic = header.getInt(), version = header.getInt();
+            int height = header.getInt(), width = header.getInt();
+            int flags = header.getInt(), energy = header.getInt();
+            long length = header.getLong(), modified = header.getLong();
+            if (magic != MAGIC || version != VERSION || energy != type.ordinal()
+                    || ((flags & HORIZONTAL) != 0) != horizontal
+                    || length != source.length() || modified != source.lastModified())
+                return null;
+
+            long pixels = (long) height * width;
+            long orderBytes = (flags & SHORT_ORDER) != 0 ? 2 : 4;
+            if (channel.size() != HEADER + pixels * 4 + pixels * orderBytes)
+                return null;
+            IntBuffer image = map(channel, HEADER, pixels * 4).asIntBuffer();
+            MappedByteBuffer orderBuffer = map(channel, HEADER + pixels * 4, pixels * orderBytes);
+            Buffer order = orderBytes == 2 ? orderBuffer.asCharBuffer() : orderBuffer.asIntBuffer();
+            return new SeamCarverIndex(height, width, horizontal, image, order);
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // 将索引写入缓存文件，整个文件一次映射，超过2GB时无法映射，直接抛出IOException而不写缓存
+    public static void write(File cache, File source, boolean horizontal, EnergyType type, SeamCarverIndex index)
+            throws IOException {
+        int height = index.height, width = index.maxWidth;
+        long pixels = (long) height * width;
+        boolean shortOrder = width <= 0x10000;
+        long size = HEADER + pixels * 4 + pixels * (shortOrder ? 2 : 4);
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Index of " + width + " x " + height + " is too large to map");
+
+        File temp = new File(cache.getPath() + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(temp, "rw");
+                FileChannel channel = file.getChannel()) {
+            file.setLength(size);
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(VERSION).putInt(height).putInt(width)
+                    .putInt((horizontal ? HORIZONTAL : 0) | (shortOrder ? SHORT_ORDER : 0))
+                    .putInt(type.ordinal())
+                    .putLong(source.length()).putLong(source.lastModified());
+
+            int[] row = new int[width];
+            for (int h = 0; h < height; h++) {
+                index.pixels.get(h * width, row, 0, width);
+                for (int value : row)
+                    out.putInt(value);
+            }
+            for (int i = 0; i < pixels; i++) {
+                int step = index.order instanceof IntBuffer ? ((IntBuffer) index.order).get(i)
+                        : ((CharBuffer) index.order).get(i);
+                if (shortOrder) {
+                    out.putChar((char) step);
+                } else {
+                    out.putInt(step);
+                }
+            }
+            out.force();
+        }
+        if (!temp.renameTo(cache)) {
+            cache.delete();
+            if (!temp.renameTo(cache))
+                throw new IOException("Cannot write " + cache);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+}
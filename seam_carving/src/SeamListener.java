@@ -0,0 +1,4 @@
+// 接收carver每次操作的计时，在执行操作的线程中调用，应当尽快返回
+public interface SeamListener {
+    void sampled(SeamSample sample);
+}
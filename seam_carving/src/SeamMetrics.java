@@ -0,0 +1,98 @@
+import jdk.jfr.EventType;
+
+import java.lang.management.ManagementFactory;
+
+// 记录一个carver每次操作中各阶段的耗时，交给监听器并作为JFR事件提交
+// 每个阶段结束时调用mark，距上一次mark的时间计入这个阶段
+// 没有监听器且JFR没有记录SeamEvent时begin不做任何事，mark和end只检查一次null，几乎没有开销
+public class SeamMetrics {
+    private static final EventType EVENT = EventType.getEventType(SeamEvent.class);
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private SeamListener listener;
+    private SeamMetrics parent; // 规划插入时副本上的各阶段计入原carver当前的操作
+    private SeamSample sample; // 当前操作的计时，不需要计时时为null
+    private SeamEvent event; // 当前阶段的JFR事件，JFR没有记录时为null
+    private long start; // 操作开始的时间
+    private long last; // 上一个阶段结束的时间
+    private long allocated; // 操作开始时调用线程已经分配的字节数
+
+    // 支持按线程统计分配的字节数时返回对应的MXBean，否则返回null
+    private static com.sun.management.ThreadMXBean threads() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+            return null;
+        return threads;
+    }
+
+    private static long allocated() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public void setListener(SeamListener listener) {
+        this.listener = listener;
+    }
+
+    // 之后的阶段都计入parent当前的操作，自己不再开始或结束操作
+    public void join(SeamMetrics parent) {
+        this.parent = parent;
+    }
+
+    // 开始一次操作，width和height为操作之前的大小
+    public void begin(SeamSample.Operation operation, int width, int height) {
+        if (this.parent != null)
+            return;
+        boolean recording = EVENT.isEnabled();
+        if (this.listener == null && !recording) {
+            this.sample = null;
+            return;
+        }
+        this.sample = new SeamSample(operation, width, height);
+        this.event = recording ? this.event() : null;
+        this.allocated = allocated();
+        this.start = System.nanoTime();
+        this.last = this.start;
+    }
+
+    // 结束一个阶段
+    public void mark(SeamSample.Phase phase) {
+        if (this.parent != null) {
+            this.parent.mark(phase);
+            return;
+        }
+        if (this.sample == null)
+            return;
+        long now = System.nanoTime();
+        this.sample.add(phase, now - this.last);
+        this.last = now;
+        if (this.event != null) {
+            this.event.phase = phase.name();
+            this.event.commit();
+            this.event = this.event();
+        }
+    }
+
+    // 结束当前操作，seams为删除或插入的seam个数
+    public void end(int seams) {
+        if (this.sample == null)
+            return;
+        SeamSample sample = this.sample;
+        long allocated = allocated();
+        sample.finish(seams, System.nanoTime() - this.start, allocated < 0 ? -1 : allocated - this.allocated);
+        this.sample = null;
+        this.event = null;
+        if (this.listener != null)
+            this.listener.sampled(sample);
+    }
+
+    private SeamEvent event() {
+        SeamEvent event = new SeamEvent();
+        event.operation = this.sample.getOperation().name();
+        event.width = this.sample.getWidth();
+        event.height = this.sample.getHeight();
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+// 记录carving的过程：第一帧完整保存一次，之后每一步只保存seam的路径和被删除或插入的像素
+// 文件是GZIP压缩的数据流，格式为：
+//   头部：MAGIC, VERSION, height, maxWidth, horizontal, 第一帧的width
+//   第一帧：height行，每行width个像素
+//   每一步：类型（REMOVE或INSERT），第一行的列，之后每行与上一行的列差（一个字节），再是height个像素
+//   结束：END
+public class SeamRecording {
+    static final int MAGIC = 0x53435243; // "SCRC"
+    static final int VERSION = 1;
+    static final byte REMOVE = 0;
+    static final byte INSERT = 1;
+    static final byte END = 2;
+
+    private final DataOutputStream out;
+    private final int height;
+    private int steps;
+    private boolean closed;
+
+    // 写入头部和第一帧，image按行存储，每行步长为stride，maxWidth为插入seam后最多达到的宽度
+    public SeamRecording(File file, int[] image, int width, int height, int stride, int maxWidth,
+            boolean horizontal) throws IOException {
+        this.height = height;
+        this.out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file), 1 << 16), 1 << 16));
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeInt(height);
+        this.out.writeInt(maxWidth);
+        this.out.writeBoolean(horizontal);
+        this.out.writeInt(width);
+        for (int h = 0; h < height; h++) {
+            for (int w = 0; w < width; w++) {
+                this.out.writeInt(image[h * stride + w]);
+            }
+        }
+    }
+
+    // 记录删除一个seam，values为被删除的像素
+    public synchronized void remove(int[] path, int[] values) throws IOException {
+        this.write(REMOVE, path, values);
+    }
+
+    // 记录插入一个seam，path为插入后新像素所在的列，values为新像素
+    public synchronized void insert(int[] path, int[] values) throws IOException {
+        this.write(INSERT, path, values);
+    }
+
+    private void write(byte type, int[] path, int[] values) throws IOException {
+        if (this.closed)
+            return;
+        if (path.length != this.height || values.length != this.height)
+            throw new IllegalArgumentException("Seam length does not match image height: " + path.length);
+        this.out.writeByte(type);
+        this.out.writeInt(path[0]);
+        for (int h = 1; h < this.height; h++) {
+            this.out.writeByte(path[h] - path[h - 1]); // seam相邻两行的列最多相差1
+        }
+        for (int h = 0; h < this.height; h++) {
+            this.out.writeInt(values[h]);
+        }
+        this.steps++;
+    }
+
+    // 已经记录的步数
+    public synchronized int getSteps() {
+        return this.steps;
+    }
+
+    public synchronized void close() throws IOException {
+        if (this.closed)
+            return;
+        this.closed = true;
+        this.out.writeByte(END);
+        this.out.close();
+    }
+}
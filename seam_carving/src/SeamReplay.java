@@ -0,0 +1,251 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+// 回放SeamRecording记录的过程，可以跳到任意一帧，也可以把一段帧导出为图像序列
+// 每隔interval步在内存中保存一帧作为检查点，跳转时从检查点或当前帧出发，最多重做interval步
+// 每一步都是可逆的，向前或向后跳转的代价相同
+public class SeamReplay {
+    private static final int MIN_INTERVAL = 64;
+    private static final int MAX_CHECKPOINTS = 32; // 检查点是完整的帧，限制其个数以控制内存
+
+    private final int height;
+    private final int maxWidth;
+    private final boolean horizontal;
+    private final byte[] types; // 每一步是删除还是插入
+    private final int[] starts; // 每一步第一行的列
+    private final byte[][] deltas; // 每一步相邻两行的列差
+    private final int[][] values; // 每一步删除或插入的像素
+    private final int interval;
+    private final int[][] checkpoints; // 第i * interval帧，每行只保存width个像素
+    private final int[] checkpointWidths;
+    private final BufferedImage image; // 当前帧，宽度为maxWidth，右侧空出的部分为0
+    private final int[] frame; // image的像素
+    private int width;
+    private int position; // 当前是第几帧，即已经执行的步数
+
+    private SeamReplay(int height, int maxWidth, boolean horizontal, int width, int[] first,
+            List<Byte> types, List<Integer> starts, List<byte[]> deltas, List<int[]> values) throws IOException {
+        this.height = height;
+        this.maxWidth = maxWidth;
+        this.horizontal = horizontal;
+        int steps = types.size();
+        this.types = new byte[steps];
+        this.starts = new int[steps];
+        for (int i = 0; i < steps; i++) {
+            this.types[i] = types.get(i);
+            this.starts[i] = starts.get(i);
+        }
+        this.deltas = deltas.toArray(new byte[0][]);
+        this.values = values.toArray(new int[0][]);
+        this.interval = Utils.max(MIN_INTERVAL, (steps + MAX_CHECKPOINTS - 1) / MAX_CHECKPOINTS);
+        this.checkpoints = new int[steps / this.interval + 1][];
+        this.checkpointWidths = new int[this.checkpoints.length];
+        this.image = new BufferedImage(maxWidth, height, BufferedImage.TYPE_INT_ARGB);
+        this.frame = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+
+        // 依次执行所有步骤，检查记录是否有效并保存检查点
+        for (int h = 0; h < height; h++) {
+            System.arraycopy(first, h * width, this.frame, h * maxWidth, width);
+        }
+        this.width = width;
+        for (int i = 0; i <= steps; i++) {
+            if (i % this.interval == 0)
+                this.checkpoint(i / this.interval);
+            if (i < steps) {
+                if (!this.valid(i))
+                    throw new IOException("Corrupt recording at step " + i);
+                this.apply(i, true);
+            }
+        }
+        this.restore(0);
+    }
+
+    // 读取记录文件，文件在记录过程中被中断时，回放已经写入的部分
+    public static SeamReplay read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), 1 << 16), 1 << 16))) {
+            if (in.readInt() != SeamRecording.MAGIC || in.readInt() != SeamRecording.VERSION)
+                throw new IOException("Not a seam recording: " + file);
+            int height = in.readInt(), maxWidth = in.readInt();
+            boolean horizontal = in.readBoolean();
+            int width = in.readInt();
+            if (height < 1 || width < 1 || width > maxWidth)
+                throw new IOException("Invalid recording size: " + width + " x " + height);
+            int[] first = new int[height * width];
+            for (int i = 0; i < first.length; i++) {
+                first[i] = in.readInt();
+            }
+
+            List<Byte> types = new ArrayList<>();
+            List<Integer> starts = new ArrayList<>();
+            List<byte[]> deltas = new ArrayList<>();
+            List<int[]> values = new ArrayList<>();
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == SeamRecording.END)
+                        break;
+                    if (type != SeamRecording.REMOVE && type != SeamRecording.INSERT)
+                        throw new IOException("Invalid step type: " + type);
+                    int start = in.readInt();
+                    byte[] delta = new byte[height - 1];
+                    in.readFully(delta);
+                    int[] value = new int[height];
+                    for (int h = 0; h < height; h++) {
+                        value[h] = in.readInt();
+                    }
+                    types.add(type);
+                    starts.add(start);
+                    deltas.add(delta);
+                    values.add(value);
+                }
+            } catch (EOFException ignored) {
+                // 记录没有正常结束，最后一步可能不完整，已经读到的步骤仍然可以回放
+            }
+            return new SeamReplay(height, maxWidth, horizontal, width, first, types, starts, deltas, values);
+        }
+    }
+
+    // 帧数，第0帧为第一帧，第i帧为执行了i步之后的图像
+    public int getFrameCount() {
+        return this.types.length + 1;
+    }
+
+    public int getPosition() {
+        return this.position;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getMaxWidth() {
+        return this.maxWidth;
+    }
+
+    public boolean isHorizontal() {
+        return this.horizontal;
+    }
+
+    // 当前帧，只有左侧getWidth()列是图像，其余为0
+    public BufferedImage getImage() {
+        return this.image;
+    }
+
+    // 跳到第index帧，从当前帧和最近的检查点中较近的一个出发
+    public BufferedImage seek(int index) {
+        if (index < 0 || index >= this.getFrameCount())
+            throw new IllegalArgumentException("Invalid frame: " + index);
+        int checkpoint = index / this.interval;
+        if (Math.abs(index - this.position) > index - checkpoint * this.interval)
+            this.restore(checkpoint);
+        while (this.position < index) {
+            this.apply(this.position++, true);
+        }
+        while (this.position > index) {
+            this.apply(--this.position, false);
+        }
+        return this.image;
+    }
+
+    // 执行第step步，forward为false时撤销这一步
+    private void apply(int step, boolean forward) {
+        boolean remove = (this.types[step] == SeamRecording.REMOVE) == forward;
+        int col = this.starts[step];
+        byte[] delta = this.deltas[step];
+        int[] value = this.values[step];
+        for (int h = 0; h < this.height; h++) {
+            if (h > 0)
+                col += delta[h - 1];
+            int offset = h * this.maxWidth;
+            if (remove) {
+                SeamCarverBase.removeAt(this.frame, offset, col, this.width);
+                this.frame[offset + this.width - 1] = 0; // 清除空出的像素
+            } else {
+                SeamCarverBase.insertAt(this.frame, offset, col, value[h], this.width);
+            }
+        }
+        this.width += remove ? -1 : 1;
+    }
+
+    // 检查第step步在当前帧上是否可以执行
+    private boolean valid(int step) {
+        boolean remove = this.types[step] == SeamRecording.REMOVE;
+        if (remove ? this.width <= 1 : this.width >= this.maxWidth)
+            return false;
+        int col = this.starts[step], limit = remove ? this.width - 1 : this.width;
+        for (int h = 0; h < this.height; h++) {
+            if (h > 0)
+                col += this.deltas[step][h - 1];
+            if (col < 0 || col > limit)
+                return false;
+        }
+        return true;
+    }
+
+    private void checkpoint(int i) {
+        int[] copy = new int[this.height * this.width];
+        for (int h = 0; h < this.height; h++) {
+            System.arraycopy(this.frame, h * this.maxWidth, copy, h * this.width, this.width);
+        }
+        this.checkpoints[i] = copy;
+        this.checkpointWidths[i] = this.width;
+    }
+
+    private void restore(int i) {
+        int width = this.checkpointWidths[i];
+        int[] copy = this.checkpoints[i];
+        Utils.parallel(this.height, this.maxWidth, (from, to) -> {
+            for (int h = from; h < to; h++) {
+                int offset = h * this.maxWidth;
+                System.arraycopy(copy, h * width, this.frame, offset, width);
+                Arrays.fill(this.frame, offset + width, offset + this.maxWidth, 0);
+            }
+        });
+        this.width = width;
+        this.position = i * this.interval;
+    }
+
+    // 将记录中的一段帧导出为PNG序列，所有帧的大小相同，便于合成视频
+    // 用法：SeamReplay <记录文件> <输出目录> [第一帧] [最后一帧]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: SeamReplay <recording> <output dir> [first frame] [last frame]");
+            return;
+        }
+        SeamReplay replay = SeamReplay.read(new File(args[0]));
+        File dir = new File(args[1]);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create output directory: " + dir);
+        int first = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        int last = args.length > 3 ? Integer.parseInt(args[3]) : replay.getFrameCount() - 1;
+
+        int width = replay.horizontal ? replay.height : replay.maxWidth;
+        int height = replay.horizontal ? replay.maxWidth : replay.height;
+        SnapshotRecorder recorder = new SnapshotRecorder(8, SnapshotRecorder.Policy.BLOCK,
+                Runtime.getRuntime().availableProcessors());
+        long start = System.currentTimeMillis();
+        replay.seek(first);
+        for (int i = first; i <= last; i++) {
+            recorder.record(replay.seek(i), Utils.orientation(replay.horizontal, replay.height), width, height,
+                    new File(dir, String.format("Frame%06d.png", i)).getPath());
+        }
+        recorder.close();
+        System.out.println(recorder.getEncoded() + " frames exported to " + dir + " in " +
+                (System.currentTimeMillis() - start) + " ms.");
+    }
+}
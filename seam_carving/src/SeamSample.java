@@ -0,0 +1,85 @@
+import java.util.Locale;
+
+// 一次删除、插入seam或刷新显示的计时结果，由SeamMetrics交给SeamListener
+public class SeamSample {
+    public enum Operation {
+        REMOVE,
+        INSERT,
+        DISPLAY // 把image中变化的部分拷贝到显示用的图像，即推迟到getImage的updateImage
+    }
+
+    // 一次操作依次经过的阶段，操作中没有经过的阶段耗时为0
+    public enum Phase {
+        ENERGY, // 重新计算seam附近的梯度
+        MAP, // 动态规划计算能量图
+        BACKTRACK, // 从能量图回溯得到seam，插入时包括把副本上删除的seam映射回当前图像
+        SHIFT, // 在每行中移动像素、灰度和能量
+        DISPLAY // 刷新显示用的图像
+    }
+
+    static final Phase[] PHASES = Phase.values();
+
+    private final Operation operation;
+    private final int width; // 操作之前的宽度
+    private final int height;
+    private final long[] times = new long[PHASES.length]; // 各阶段的耗时，单位为纳秒
+    private int seams;
+    private long time; // 整个操作的耗时，包括不属于任何阶段的部分
+    private long allocated = -1; // 调用线程分配的字节数，-1表示JVM不支持统计
+
+    SeamSample(Operation operation, int width, int height) {
+        this.operation = operation;
+        this.width = width;
+        this.height = height;
+    }
+
+    void add(Phase phase, long nanos) {
+        this.times[phase.ordinal()] += nanos;
+    }
+
+    void finish(int seams, long time, long allocated) {
+        this.seams = seams;
+        this.time = time;
+        this.allocated = allocated;
+    }
+
+    public Operation getOperation() {
+        return this.operation;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    // 本次删除或插入的seam个数，刷新显示时为0
+    public int getSeams() {
+        return this.seams;
+    }
+
+    public long getTime() {
+        return this.time;
+    }
+
+    public long getTime(Phase phase) {
+        return this.times[phase.ordinal()];
+    }
+
+    // 只统计调用线程，并行计算中工作线程的分配不包括在内
+    public long getAllocated() {
+        return this.allocated;
+    }
+
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format(Locale.ROOT, "%s %d seams on %dx%d in %.3f ms (",
+                this.operation, this.seams, this.width, this.height, this.time / 1e6));
+        for (Phase phase : PHASES) {
+            builder.append(String.format(Locale.ROOT, "%s %.3f ms, ", phase.name().toLowerCase(Locale.ROOT),
+                    this.times[phase.ordinal()] / 1e6));
+        }
+        return builder.append(this.allocated).append(" bytes allocated)").toString();
+    }
+}
@@ -0,0 +1,142 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+// 累计一个或多个carver的计时，可以随时取得快照，可以同时作为多个carver的监听器
+// 单个seam的耗时记录在对数分桶的直方图中，每个2的幂区间分为SUB个桶，分位数的相对误差不超过1/SUB
+public class SeamStats implements SeamListener {
+    private static final int SUB = 16;
+    private static final int SHIFT = 4; // log2(SUB)
+
+    private final long[] histogram = new long[(64 - SHIFT) * SUB];
+    private final long[] times = new long[SeamSample.PHASES.length];
+    private long seams;
+    private long time; // 删除和插入seam所用的时间，不包括刷新显示
+    private long displayTime;
+    private long allocated;
+
+    // 按删除或插入的seam的平均耗时记录每个seam，批量操作中的seam耗时相同
+    public synchronized void sampled(SeamSample sample) {
+        for (SeamSample.Phase phase : SeamSample.PHASES) {
+            this.times[phase.ordinal()] += sample.getTime(phase);
+        }
+        if (sample.getAllocated() > 0)
+            this.allocated += sample.getAllocated();
+        if (sample.getOperation() == SeamSample.Operation.DISPLAY) {
+            this.displayTime += sample.getTime();
+            return;
+        }
+        if (sample.getSeams() == 0)
+            return;
+        this.seams += sample.getSeams();
+        this.time += sample.getTime();
+        this.histogram[bucket(sample.getTime() / sample.getSeams())] += sample.getSeams();
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(this.histogram, 0);
+        Arrays.fill(this.times, 0);
+        this.seams = 0;
+        this.time = 0;
+        this.displayTime = 0;
+        this.allocated = 0;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(this.seams, this.time, this.displayTime, this.times.clone(), this.allocated,
+                this.percentile(0.5), this.percentile(0.99));
+    }
+
+    // 小于SUB的值各占一个桶，之后每个2的幂区间按最高的SHIFT + 1位分为SUB个桶
+    private static int bucket(long value) {
+        if (value < SUB)
+            return (int) Math.max(value, 0);
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        return (exp - SHIFT + 1) * SUB + (int) (value >>> (exp - SHIFT)) - SUB;
+    }
+
+    // 桶中最小的值
+    private static long value(int bucket) {
+        if (bucket < SUB)
+            return bucket;
+        int exp = bucket / SUB + SHIFT - 1;
+        return (long) (SUB + bucket % SUB) << (exp - SHIFT);
+    }
+
+    private long percentile(double q) {
+        if (this.seams == 0)
+            return 0;
+        long rank = (long) Math.ceil(q * this.seams), count = 0;
+        for (int i = 0; i < this.histogram.length; i++) {
+            count += this.histogram[i];
+            if (count >= rank)
+                return value(i);
+        }
+        return value(this.histogram.length - 1);
+    }
+
+    // 某一时刻的累计值，时间单位为纳秒
+    public static class Snapshot {
+        private final long seams;
+        private final long time;
+        private final long displayTime;
+        private final long[] times;
+        private final long allocated;
+        private final long p50;
+        private final long p99;
+
+        private Snapshot(long seams, long time, long displayTime, long[] times, long allocated, long p50, long p99) {
+            this.seams = seams;
+            this.time = time;
+            this.displayTime = displayTime;
+            this.times = times;
+            this.allocated = allocated;
+            this.p50 = p50;
+            this.p99 = p99;
+        }
+
+        public long getSeams() {
+            return this.seams;
+        }
+
+        public long getTime() {
+            return this.time;
+        }
+
+        public long getDisplayTime() {
+            return this.displayTime;
+        }
+
+        public long getTime(SeamSample.Phase phase) {
+            return this.times[phase.ordinal()];
+        }
+
+        public long getAllocated() {
+            return this.allocated;
+        }
+
+        // 按carve所用的时间计算，多个carver并发时是每个线程的速度，不是挂钟时间上的总速度
+        public double getSeamsPerSecond() {
+            return this.time == 0 ? 0 : this.seams * 1e9 / this.time;
+        }
+
+        public long getP50() {
+            return this.p50;
+        }
+
+        public long getP99() {
+            return this.p99;
+        }
+
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format(Locale.ROOT,
+                    "%d seams in %.1f ms (%.1f seams/s, p50 %.3f ms, p99 %.3f ms per seam)\n",
+                    this.seams, this.time / 1e6, this.getSeamsPerSecond(), this.p50 / 1e6, this.p99 / 1e6));
+            for (SeamSample.Phase phase : SeamSample.PHASES) {
+                builder.append(String.format(Locale.ROOT, "  %-10s %10.1f ms\n",
+                        phase.name().toLowerCase(Locale.ROOT), this.times[phase.ordinal()] / 1e6));
+            }
+            return builder.append(String.format(Locale.ROOT, "  %-10s %10.1f MB", "allocated",
+                    this.allocated / 1048576.0)).toString();
+        }
+    }
+}
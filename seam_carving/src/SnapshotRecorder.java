@@ -0,0 +1,151 @@
+import javax.imageio.ImageIO;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 在后台保存快照：调用线程只把帧拷贝到缓冲池中的图像，PNG编码和写文件由后台线程完成
+public class SnapshotRecorder {
+    // 缓冲池用完时的处理方式：丢弃这一帧，或者等待有空闲的缓冲
+    public enum Policy {
+        DROP,
+        BLOCK
+    }
+
+    // 一帧快照，图像在缓冲池中重复使用
+    private static class Frame {
+        private BufferedImage image;
+        private String filename;
+    }
+
+    private static final Frame STOP = new Frame(); // 通知编码线程退出
+
+    private final Policy policy;
+    private final BlockingQueue<Frame> pool; // 空闲的缓冲
+    private final BlockingQueue<Frame> queue; // 等待编码的帧
+    private final Thread[] encoders;
+    private final AtomicLong encoded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean closed;
+
+    // capacity为最多等待编码的帧数，threads为并行编码的线程数
+    public SnapshotRecorder(int capacity, Policy policy, int threads) {
+        if (capacity < 1 || threads < 1)
+            throw new IllegalArgumentException("Invalid capacity or thread count: " + capacity + ", " + threads);
+        this.policy = policy;
+        // 正在编码的帧也占用缓冲，所以缓冲池比队列多threads个
+        this.pool = new ArrayBlockingQueue<>(capacity + threads);
+        this.queue = new ArrayBlockingQueue<>(capacity + threads);
+        for (int i = 0; i < capacity + threads; i++) {
+            this.pool.add(new Frame());
+        }
+        this.encoders = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            this.encoders[i] = new Thread(this::encode, "snapshot-encoder-" + i);
+            this.encoders[i].setDaemon(true);
+            this.encoders[i].start();
+        }
+    }
+
+    // 将source经过transform后的width x height区域作为一帧保存到filename
+    // 帧被接受时返回true，DROP策略下没有空闲缓冲时返回false
+    public boolean record(BufferedImage source, AffineTransform transform, int width, int height, String filename) {
+        if (this.closed)
+            throw new IllegalStateException("Recorder is closed");
+        Frame frame = this.policy == Policy.BLOCK ? this.take() : this.pool.poll();
+        if (frame == null) {
+            this.dropped.incrementAndGet();
+            return false;
+        }
+        if (frame.image == null || frame.image.getWidth() != width || frame.image.getHeight() != height) {
+            frame.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+        Graphics2D g2 = frame.image.createGraphics();
+        g2.setComposite(AlphaComposite.Src); // 覆盖缓冲中上一帧的内容
+        g2.drawImage(source, transform, null);
+        g2.dispose();
+        frame.filename = filename;
+        this.queue.add(frame);
+        return true;
+    }
+
+    // 等待空闲的缓冲，被中断时放弃这一帧
+    private Frame take() {
+        try {
+            return this.pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // 编码线程：依次取出帧写成PNG，再把缓冲放回缓冲池
+    private void encode() {
+        while (true) {
+            Frame frame;
+            try {
+                frame = this.queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (frame == STOP)
+                return;
+            // 编码出错（包括编码器抛出的运行时异常）只计入failed，缓冲必须放回，否则BLOCK策略下record会一直等待
+            try {
+                ImageIO.write(frame.image, "PNG", new File(frame.filename));
+                this.encoded.incrementAndGet();
+            } catch (IOException | RuntimeException ignored) {
+                this.failed.incrementAndGet();
+            } finally {
+                this.pool.add(frame);
+            }
+        }
+    }
+
+    public long getEncoded() {
+        return this.encoded.get();
+    }
+
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    public long getFailed() {
+        return this.failed.get();
+    }
+
+    // 尚未写完的帧数
+    public int getPending() {
+        return this.queue.size();
+    }
+
+    // 写完队列中剩余的帧后结束编码线程
+    public void close() {
+        if (this.closed)
+            return;
+        this.closed = true;
+        for (Thread ignored : this.encoders) {
+            try {
+                this.queue.put(STOP);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        for (Thread encoder : this.encoders) {
+            try {
+                encoder.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+// 内置的能量函数，按计算代价从低到高排列，默认使用SOBEL
+public enum StandardEnergy implements EnergyFunction {
+    // 与右侧和下方像素的灰度差之和，每个像素只读取三个灰度值
+    LUMA {
+        public int energy(int[] gray, int stride, int width, int height, int x, int y) {
+            int i = y * stride + x;
+            int right = x < width - 1 ? i + 1 : i, down = y < height - 1 ? i + stride : i;
+            return Math.abs(gray[right] - gray[i]) + Math.abs(gray[down] - gray[i]);
+        }
+    },
+
+    // 中心差分的L1梯度|dI/dx| + |dI/dy|
+    GRADIENT {
+        public int energy(int[] gray, int stride, int width, int height, int x, int y) {
+            int mid = y * stride;
+            int up = (y > 0 ? y - 1 : 0) * stride, down = (y < height - 1 ? y + 1 : height - 1) * stride;
+            int left = x > 0 ? x - 1 : 0, right = x < width - 1 ? x + 1 : width - 1;
+            return Math.abs(gray[mid + right] - gray[mid + left]) + Math.abs(gray[down + x] - gray[up + x]);
+        }
+    },
+
+    // Sobel梯度的L1范数，整幅图像和整行使用PixelKernels中可以向量化的实现
+    SOBEL {
+        public int energy(int[] gray, int stride, int width, int height, int x, int y) {
+            return Utils.sobel(gray, stride, width, height, x, y);
+        }
+
+        public void update(int[] gray, int[] energy, int stride, int width, int height, int y, int from, int to) {
+            if (from == 0 && to == width) {
+                Utils.getKernels().sobel(gray, energy, stride, width, height, y);
+                return;
+            }
+            for (int x = from, i = y * stride + from; x < to; x++, i++) {
+                energy[i] = Utils.sobel(gray, stride, width, height, x, y);
+            }
+        }
+
+        public int[] compute(int[] gray, int stride, int width, int height) {
+            return Utils.sobel(gray, stride, width, height);
+        }
+    },
+
+    // Sobel梯度的L2范数，对斜向的边缘更准确，需要开方
+    SOBEL_L2 {
+        public int energy(int[] gray, int stride, int width, int height, int x, int y) {
+            int up = (y > 0 ? y - 1 : 0) * stride, mid = y * stride;
+            int down = (y < height - 1 ? y + 1 : height - 1) * stride;
+            int left = x > 0 ? x - 1 : 0, right = x < width - 1 ? x + 1 : width - 1;
+            int sx = gray[up + left] - gray[up + right] + 2 * gray[mid + left] - 2 * gray[mid + right] +
+                    gray[down + left] - gray[down + right];
+            int sy = gray[up + left] + 2 * gray[up + x] + gray[up + right] - gray[down + left] -
+                    2 * gray[down + x] - gray[down + right];
+            return (int) Math.round(Math.sqrt(sx * sx + sy * sy));
+        }
+    },
+
+    // Sobel梯度加上9x9窗口内灰度的局部熵（Avidan & Shamir的eEntropy），纹理区域的能量更高
+    // 灰度量化为BINS级，熵以比特计，乘以ENTROPY_SCALE后与梯度相加
+    ENTROPY {
+        public int getRadius() {
+            return ENTROPY_RADIUS;
+        }
+
+        public int energy(int[] gray, int stride, int width, int height, int x, int y) {
+            int[] histogram = new int[BINS];
+            for (int dy = -ENTROPY_RADIUS; dy <= ENTROPY_RADIUS; dy++) {
+                int row = Utils.min(Utils.max(y + dy, 0), height - 1) * stride;
+                for (int dx = -ENTROPY_RADIUS; dx <= ENTROPY_RADIUS; dx++) {
+                    histogram[gray[row + Utils.min(Utils.max(x + dx, 0), width - 1)] >> 4]++;
+                }
+            }
+            return Utils.sobel(gray, stride, width, height, x, y) + entropy(histogram);
+        }
+
+        // 窗口沿行滑动，每移动一列只需要减去移出的一列、加上移入的一列
+        public void update(int[] gray, int[] energy, int stride, int width, int height, int y, int from, int to) {
+            if (from >= to)
+                return;
+            int[] rows = new int[2 * ENTROPY_RADIUS + 1];
+            for (int dy = -ENTROPY_RADIUS; dy <= ENTROPY_RADIUS; dy++) {
+                rows[dy + ENTROPY_RADIUS] = Utils.min(Utils.max(y + dy, 0), height - 1) * stride;
+            }
+            int[] histogram = new int[BINS];
+            for (int dx = -ENTROPY_RADIUS; dx <= ENTROPY_RADIUS; dx++) {
+                column(gray, rows, Utils.min(Utils.max(from + dx, 0), width - 1), histogram, 1);
+            }
+            for (int x = from; x < to; x++) {
+                if (x > from) {
+                    column(gray, rows, Utils.max(x - ENTROPY_RADIUS - 1, 0), histogram, -1);
+                    column(gray, rows, Utils.min(x + ENTROPY_RADIUS, width - 1), histogram, 1);
+                }
+                energy[y * stride + x] = Utils.sobel(gray, stride, width, height, x, y) + entropy(histogram);
+            }
+        }
+    };
+
+    private static final int BINS = 16;
+    private static final int ENTROPY_RADIUS = 4;
+    private static final int ENTROPY_SCALE = 32;
+    private static final int WINDOW = (2 * ENTROPY_RADIUS + 1) * (2 * ENTROPY_RADIUS + 1);
+    private static final double[] N_LOG_N = new double[WINDOW + 1]; // n * log2(n)
+
+    static {
+        for (int n = 1; n <= WINDOW; n++) {
+            N_LOG_N[n] = n * Math.log(n) / Math.log(2);
+        }
+    }
+
+    // 除ENTROPY外都只读取相邻的像素
+    public int getRadius() {
+        return 1;
+    }
+
+    // 按照直方图计算熵：H = log2(N) - sum(c * log2(c)) / N
+    private static int entropy(int[] histogram) {
+        double sum = 0;
+        for (int count : histogram) {
+            sum += N_LOG_N[count];
+        }
+        return (int) Math.round(ENTROPY_SCALE * (N_LOG_N[WINDOW] - sum) / WINDOW);
+    }
+
+    // 将窗口中第x列的像素加入（sign为1）或移出（sign为-1）直方图
+    private static void column(int[] gray, int[] rows, int x, int[] histogram, int sign) {
+        for (int row : rows) {
+            histogram[gray[row + x] >> 4] += sign;
+        }
+    }
+}
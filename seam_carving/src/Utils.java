@@ -1,11 +1,12 @@
 import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
 
 public class Utils {
@@ -30,50 +31,112 @@ public class Utils {
     }
 
     interface ParallelFunc {
-        void process(int cpu, int cpus);
+        void process(int from, int to);
     }
 
-    public static void parallel(ParallelFunc func) {
-        int cpus = Runtime.getRuntime().availableProcessors();
+    // 每个任务至少处理的像素个数，总量小于该值的图像直接串行处理
+    public static final int GRAIN = 1 << 14;
+    private static volatile ForkJoinPool pool = new ForkJoinPool(Integer.getInteger("seamcarving.threads",
+            Runtime.getRuntime().availableProcessors()));
+
+    // 设置共享线程池的线程数
+    // 旧线程池不关闭：其他线程可能已经取得它并正要提交任务，关闭后会被拒绝；空闲的工作线程会自行退出
+    public static synchronized void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        if (threads == pool.getParallelism())
+            return;
+        pool = new ForkJoinPool(threads);
+    }
+
+    public static int getThreads() {
+        return pool.getParallelism();
+    }
+
+    // 灰度化、Sobel和能量图内层循环的实现，启动时选定
+    private static final PixelKernels KERNELS = kernels();
+
+    // 系统属性seamcarving.vector不为false并且向量化的实现可用时使用它，否则使用标量实现
+    private static PixelKernels kernels() {
+        PixelKernels vector = Boolean.parseBoolean(System.getProperty("seamcarving.vector", "true"))
+                ? vectorKernels() : null;
+        return vector != null ? vector : new ScalarKernels();
+    }
+
+    public static PixelKernels getKernels() {
+        return KERNELS;
+    }
+
+    // 向量化的实现，classpath中没有vector模块、运行时没有--add-modules jdk.incubator.vector
+    // 或者硬件不支持足够宽的向量时返回null
+    public static PixelKernels vectorKernels() {
+        try {
+            return (PixelKernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
 
-        Thread[] threads = new Thread[cpus];
-        for (int i = 0; i < cpus; i++) {
-            int cpu = i;
-            threads[cpu] = new Thread(() -> func.process(cpu, cpus));
+    // 将[0, rows)划分为连续的块并行处理，每行包含cols个像素
+    public static void parallel(int rows, int cols, ParallelFunc func) {
+        ForkJoinPool pool = Utils.pool;
+        int threads = pool.getParallelism();
+        long total = (long) rows * cols;
+        if (threads == 1 || total < 2L * GRAIN) {
+            func.process(0, rows);
+            return;
         }
+        // 每块至少GRAIN个像素，同时为工作窃取留出每个线程约4块的余量
+        int block = Math.max((GRAIN + cols - 1) / Math.max(cols, 1), (rows + threads * 4 - 1) / (threads * 4));
+        pool.invoke(new RangeTask(func, 0, rows, block));
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
 
-        for (Thread thread : threads) {
-            thread.start();
+        private final ParallelFunc func;
+        private final int from, to, block;
+
+        RangeTask(ParallelFunc func, int from, int to, int block) {
+            this.func = func;
+            this.from = from;
+            this.to = to;
+            this.block = block;
         }
 
-        try {
-            for (Thread thread : threads) {
-                thread.join();
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= this.block) {
+                this.func.process(this.from, this.to);
+                return;
             }
-        } catch (InterruptedException ignored) {
+            int mid = (this.from + this.to) >>> 1;
+            invokeAll(new RangeTask(this.func, this.from, mid, this.block),
+                    new RangeTask(this.func, mid, this.to, this.block));
         }
     }
 
-    // 灰度化图像
-    public static int[][] grayscale(int[][] image) {
-        int height = image.length, width = image[0].length;
-        int[][] gray = new int[height][width];
-
-        parallel((cpu, cpus) -> {
-            for (int h = cpu; h < height; h += cpus) {
-                for (int w = 0; w < width; w++) {
-                    int pixel = image[h][w];
-                    int r = (pixel >> 16) & 0xFF;
-                    int g = (pixel >> 8) & 0xFF;
-                    int b = pixel & 0xFF;
-                    gray[h][w] = (3 * r + 4 * g + b) / 8;
-                }
+    // 灰度化按行存储的图像，结果与image的布局相同
+    public static int[] grayscale(int[] image, int stride, int width, int height) {
+        int[] gray = new int[image.length];
+
+        parallel(height, width, (from, to) -> {
+            for (int h = from; h < to; h++) {
+                KERNELS.grayscale(image, gray, h * stride, h * stride + width);
             }
         });
 
         return gray;
     }
 
+    // 单个像素的灰度值
+    public static int luma(int pixel) {
+        int r = (pixel >> 16) & 0xFF;
+        int g = (pixel >> 8) & 0xFF;
+        int b = pixel & 0xFF;
+        return (3 * r + 4 * g + b) / 8;
+    }
+
     public static int argmin(int[] data, int size) {
         int index = 0;
         int min = data[0];
@@ -98,115 +161,44 @@ public class Utils {
         return index;
     }
 
-    // 边缘填充
-    public static int[][] pad(int[][] image, int pad) {
-        int height = image.length, width = image[0].length;
-        int pad2 = pad * 2;
-        int[][] result = new int[height + pad2][width + pad2];
-
-        parallel((cpu, cpus) -> {
-            int h, w;
-            for (h = pad + cpu; h < height + pad; h += cpus) {
-                for (w = 0; w < pad; w++)
-                    result[h][w] = image[h - pad][0];
-                for (w = pad; w < width + pad; w++)
-                    result[h][w] = image[h - pad][w - pad];
-                for (w = width + pad; w < width + pad2; w++)
-                    result[h][w] = image[h - pad][width - 1];
-            }
-            for (h = cpu; h < pad; h += cpus) {
-                for (w = 0; w < pad; w++)
-                    result[h][w] = image[0][0];
-                for (w = pad; w < width + pad; w++)
-                    result[h][w] = image[0][w - pad];
-                for (w = width + pad; w < width + pad2; w++)
-                    result[h][w] = image[0][width - 1];
-            }
-            for (h = height + pad + cpu; h < height + pad2; h += cpus) {
-                for (w = 0; w < pad; w++)
-                    result[h][w] = image[height - 1][0];
-                for (w = pad; w < width + pad; w++)
-                    result[h][w] = image[height - 1][w - pad];
-                for (w = width + pad; w < width + pad2; w++)
-                    result[h][w] = image[height - 1][width - 1];
-            }
-        });
+    // Sobel算子，输入为按行存储的灰度图像，结果与gray的布局相同
+    public static int[] sobel(int[] gray, int stride, int width, int height) {
+        int[] result = new int[gray.length];
 
-        return result;
-    }
-
-    // Sobel算子
-    public static List<List<Integer>> sobel(int[][] image) {
-        int height = image.length + 2, width = image[0].length + 2;
-        int[][] gray = pad(grayscale(image), 1);
-        List<List<Integer>> result = new ArrayList<>(height);
-        for (int i = 0; i < height; i++) {
-            result.add(new ArrayList<>(width));
-        }
-
-        parallel((cpu, cpus) -> {
-            for (int h = 1 + cpu; h < height - 1; h += cpus) {
-                for (int w = 1; w < width - 1; w++) {
-                    int sx = gray[h - 1][w - 1] -
-                            gray[h - 1][w + 1] +
-                            2 * gray[h][w - 1] -
-                            2 * gray[h][w + 1] +
-                            gray[h + 1][w - 1] -
-                            gray[h + 1][w - 1];
-                    int sy = gray[h - 1][w - 1] +
-                            2 * gray[h - 1][w] +
-                            gray[h - 1][w + 1] -
-                            gray[h + 1][w - 1] -
-                            2 * gray[h + 1][w] -
-                            gray[h + 1][w + 1];
-                    result.get(h - 1).add(Math.abs(sx) + Math.abs(sy));
-                }
+        parallel(height, width, (from, to) -> {
+            for (int h = from; h < to; h++) {
+                KERNELS.sobel(gray, result, stride, width, height, h);
             }
         });
 
         return result;
     }
 
-    // 转置图像
-    public static int[][] transpose(int[][] image) {
-        int height = image.length, width = image[0].length;
-        int blockSize = 8;
-        int[][] result = new int[width][height];
-
-        parallel((cpu, cpus) -> {
-            for (int h = cpu * blockSize; h < height; h += blockSize * cpus) {
-                for (int w = 0; w < width; w += blockSize) {
-                    for (int i = h; i < i + blockSize; i++) {
-                        if (i >= height)
-                            break;
-                        for (int j = w; j < w + blockSize; j++) {
-                            if (j >= width)
-                                break;
-                            result[j][i] = image[i][j];
-                        }
-                    }
-                }
-            }
-        });
-
-        return result;
+    // 计算按行存储的灰度图像中(x, y)处的Sobel梯度，越界的像素取最近的边缘像素
+    public static int sobel(int[] gray, int stride, int width, int height, int x, int y) {
+        int up = (y > 0 ? y - 1 : 0) * stride, mid = y * stride;
+        int down = (y < height - 1 ? y + 1 : height - 1) * stride;
+        int left = x > 0 ? x - 1 : 0, right = x < width - 1 ? x + 1 : width - 1;
+        int sx = gray[up + left] -
+                gray[up + right] +
+                2 * gray[mid + left] -
+                2 * gray[mid + right] +
+                gray[down + left] -
+                gray[down + right];
+        int sy = gray[up + left] +
+                2 * gray[up + x] +
+                gray[up + right] -
+                gray[down + left] -
+                2 * gray[down + x] -
+                gray[down + right];
+        return Math.abs(sx) + Math.abs(sy);
     }
 
-    // 镜像图像
-    public static int[][] mirror(int[][] image) {
-        int height = image.length, width = image[0].length;
-
-        parallel((cpu, cpus) -> {
-            for (int h = cpu; h < height; h += cpus) {
-                for (int w = 0; w < width / 2; w++) {
-                    int temp = image[h][w];
-                    image[h][w] = image[h][width - 1 - w];
-                    image[h][width - 1 - w] = temp;
-                }
-            }
-        });
-
-        return image;
+    // 水平carver中的图像经过转置和镜像，显示时需要旋转回原来的方向，height为carver中图像的高度
+    public static AffineTransform orientation(boolean horizontal, int height) {
+        if (horizontal)
+            return new AffineTransform(0, 1, -1, 0, height, 0);
+        return new AffineTransform();
     }
 
     public static void delay(int delay) {
@@ -243,29 +235,41 @@ public class Utils {
         return filePath;
     }
 
-    // 写入图像
-    public static void writeImage(
-            int[] image,
-            int width,
-            int height,
-            boolean horizontal,
-            String filename) {
-        File file = new File(filename);
+    // 将按行存储的二维图像写成PNG
+    public static void writeImage(int[][] image, File file) throws IOException {
+        int height = image.length, width = image[0].length;
         BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        if (horizontal) {
-            int index = 0;
-            for (int y = height - 1; y >= 0; y--) {
-                for (int x = 0; x < width; x++) {
-                    bufferedImage.setRGB(y, x, image[index++]);
-                }
-            }
-        } else {
-            bufferedImage.setRGB(0, 0, width, height, image, 0, width);
+        for (int h = 0; h < height; h++) {
+            bufferedImage.setRGB(0, h, width, 1, image[h], 0, width);
         }
-        try {
-            ImageIO.write(bufferedImage, "PNG", file);
-        } catch (IOException ignored) {
+        if (!ImageIO.write(bufferedImage, "PNG", file))
+            throw new IOException("No PNG writer available");
+    }
+
+    // 将carver中按行存储、每行步长为stride的图像转换回原始方向，水平carver中的图像是原图旋转90度
+    public static int[][] toImage(int[] image, int width, int height, int stride, boolean horizontal) {
+        if (!horizontal) {
+            int[][] result = new int[height][width];
+            for (int h = 0; h < height; h++) {
+                System.arraycopy(image, h * stride, result[h], 0, width);
+            }
+            return result;
         }
+        // 按块旋转，每个任务写入结果中连续的若干行
+        int blockSize = 8;
+        int[][] result = new int[width][height];
+        parallel(width, height, (from, to) -> {
+            for (int r = from; r < to; r += blockSize) {
+                int rEnd = Utils.min(r + blockSize, to);
+                for (int c = 0; c < height; c++) {
+                    int offset = (height - 1 - c) * stride;
+                    for (int i = r; i < rEnd; i++) {
+                        result[i][c] = image[offset + i];
+                    }
+                }
+            }
+        });
+        return result;
     }
 
     // 读取图像
@@ -276,15 +280,15 @@ public class Utils {
     public static int[][] readImage(File file) {
         try {
             BufferedImage image = ImageIO.read(file);
+            if (image == null)
+                return null; // 不支持的格式
             int width = image.getWidth();
             int height = image.getHeight();
             int[][] pixels = new int[height][width];
 
-            parallel((cpu, cpus) -> {
-                for (int h = cpu; h < height; h += cpus) {
-                    for (int w = 0; w < width; w++) {
-                        pixels[h][w] = image.getRGB(w, h);
-                    }
+            parallel(height, width, (from, to) -> {
+                for (int h = from; h < to; h++) {
+                    image.getRGB(0, h, width, 1, pixels[h], 0, width);
                 }
             });
 
@@ -293,42 +297,4 @@ public class Utils {
             return null;
         }
     }
-
-    public static int kthMinIndex(int[] array, int length, int k) {
-        return quickSelect(array, 0, length - 1, k - 1); // k - 1 因为k是从1开始的，而索引是从0开始
-    }
-
-    private static int quickSelect(int[] array, int left, int right, int k) {
-        if (left == right) {
-            return left;
-        }
-        int pivotIndex = partition(array, left, right);
-        if (k == pivotIndex) {
-            return k;
-        } else if (k < pivotIndex) {
-            return quickSelect(array, left, pivotIndex - 1, k);
-        } else {
-            return quickSelect(array, pivotIndex + 1, right, k);
-        }
-    }
-
-    private static int partition(int[] array, int left, int right) {
-        int pivot = array[right];
-        int i = left;
-        for (int j = left; j < right; j++) {
-            if (array[j] <= pivot) {
-                swap(array, i, j);
-                i++;
-            }
-        }
-        swap(array, i, right);
-        return i;
-    }
-
-    private static void swap(int[] array, int i, int j) {
-        int temp = array[i];
-        array[i] = array[j];
-        array[j] = temp;
-    }
-
 }
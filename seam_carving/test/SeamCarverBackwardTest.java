@@ -0,0 +1,109 @@
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SeamCarverBackwardTest {
+    private static int threads;
+
+    // 单核机器上也按多线程切分，使并行路径真正运行
+    @BeforeAll
+    static void setThreads() {
+        threads = Utils.getThreads();
+        Utils.setThreads(4);
+    }
+
+    @AfterAll
+    static void restoreThreads() {
+        Utils.setThreads(threads);
+    }
+
+    // 只重新计算受影响的能量图，结果与每次完整重新计算相同
+    @Test
+    void incrementalMatchesFullRecompute() {
+        for (boolean horizontal : new boolean[] { false, true }) {
+            SeamCarverBackward incremental = new SeamCarverBackward(TestImages.synth(60, 80, 3), horizontal);
+            SeamCarverBackward full = new SeamCarverBackward(TestImages.synth(60, 80, 3), horizontal);
+            full.setIncremental(false);
+            for (int i = 0; i < 40; i++) {
+                if (i < 30) {
+                    incremental.remove(false, 0);
+                    full.remove(false, 0);
+                } else {
+                    incremental.add(false, 0);
+                    full.add(false, 0);
+                }
+                assertArrayEquals(TestImages.map(full), TestImages.map(incremental), "step " + i);
+            }
+        }
+    }
+
+    // 只重新计算seam附近的Sobel梯度，结果与整幅重新计算相同
+    @Test
+    void localEnergyMatchesSobel() {
+        for (boolean horizontal : new boolean[] { false, true }) {
+            SeamCarverBackward carver = new SeamCarverBackward(TestImages.synth(60, 80, 3), horizontal);
+            carver.remove(30, false, 0);
+            carver.add(10, false, 0);
+            int[] energy = StandardEnergy.SOBEL.compute(carver.gray, carver.maxWidth, carver.width, carver.height);
+            assertArrayEquals(TestImages.rows(energy, carver.maxWidth, carver.width, carver.height),
+                    TestImages.rows(carver.energy, carver.maxWidth, carver.width, carver.height));
+        }
+    }
+
+    // 波前并行计算的能量图与串行计算完全一致，宽度足以切分成多个列块
+    @Test
+    void parallelMatchesSerial() {
+        SeamCarverBackward parallel = new SeamCarverBackward(TestImages.synth(70, 1200, 7));
+        SeamCarverBackward serial = new SeamCarverBackward(TestImages.synth(70, 1200, 7));
+        parallel.setIncremental(false);
+        serial.setIncremental(false);
+        serial.setParallel(false);
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(TestImages.map(serial), TestImages.map(parallel), "step " + i);
+            parallel.remove(false, 0);
+            serial.remove(false, 0);
+        }
+    }
+
+    // 一次找出的多条seam每一行都严格递增，按批删除得到要求的宽度
+    @Test
+    void batchSeamsDoNotCross() {
+        SeamCarverBackward carver = new SeamCarverBackward(TestImages.synth(50, 90, 5));
+        int[][] paths = carver.findSeams(20);
+        assertTrue(paths.length > 1);
+        assertTrue(TestImages.ordered(paths));
+        carver.setBatchSize(8);
+        assertEquals(30, carver.remove(30, false, 0));
+        assertEquals(60, carver.getWidth());
+    }
+
+    // 逐个插入与一次插入同样多的seam结果相同，每个原始像素最多出现两次
+    // 用alpha记录原始列号，灰度和能量不受alpha影响
+    @Test
+    void stepwiseInsertMatchesBulk() {
+        int[][] image = TestImages.synth(40, 120, 9);
+        for (int[] row : image) {
+            for (int w = 0; w < row.length; w++) {
+                row[w] = (row[w] & 0xFFFFFF) | (w << 24);
+            }
+        }
+        SeamCarverBackward stepwise = new SeamCarverBackward(image);
+        SeamCarverBackward bulk = new SeamCarverBackward(image);
+        for (int i = 0; i < 60; i++) {
+            assertTrue(stepwise.add(false, 0));
+        }
+        assertEquals(60, bulk.add(60, false, 0));
+        int[][] pixels = TestImages.pixels(stepwise);
+        assertArrayEquals(TestImages.pixels(bulk), pixels);
+        for (int[] row : pixels) {
+            int[] copies = new int[120];
+            for (int pixel : row) {
+                assertTrue(++copies[pixel >>> 24] <= 2);
+            }
+        }
+    }
+}
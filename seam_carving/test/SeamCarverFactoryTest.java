@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SeamCarverFactoryTest {
+    // 超过内存预算时改用金字塔carver，金字塔也超过或者并不更省时拒绝创建
+    @Test
+    void budgetSelectsCarver() {
+        int[][] image = TestImages.synth(40, 60, 1);
+        SeamCarverFactory factory = new SeamCarverFactory();
+        assertTrue(factory.create(image, false, EnergyType.BACKWARD) instanceof SeamCarverBackward);
+        factory.setMemoryBudget(SeamCarverFactory.estimate(60, 40, EnergyType.PYRAMID));
+        assertTrue(factory.create(image, false, EnergyType.BACKWARD) instanceof SeamCarverPyramid);
+        assertTrue(factory.create(image, true, EnergyType.FORWARD) instanceof SeamCarverPyramid);
+        factory.setMemoryBudget(SeamCarverFactory.estimate(60, 40, EnergyType.FORWARD));
+        assertTrue(factory.create(image, true, EnergyType.FORWARD) instanceof SeamCarverForward);
+        factory.setMemoryBudget(SeamCarverFactory.estimate(60, 40, EnergyType.PYRAMID) - 1);
+        assertThrows(IllegalArgumentException.class, () -> factory.create(image, false, EnergyType.BACKWARD));
+        assertThrows(IllegalArgumentException.class, () -> factory.create(image, false, EnergyType.FORWARD));
+    }
+
+    // 复用的carver载入另一幅图像后，删除和插入的结果与新建的carver相同
+    @Test
+    void reuseMatchesCreate() {
+        SeamCarverFactory factory = new SeamCarverFactory();
+        for (EnergyType type : EnergyType.values()) {
+            for (boolean horizontal : new boolean[] { false, true }) {
+                SeamCarverBase carver = factory.reuse(null, TestImages.synth(50, 70, 2), horizontal, type);
+                carver.setUpdate(false);
+                carver.add(20, false, 0);
+                for (int[][] image : new int[][][] { TestImages.synth(50, 70, 3), TestImages.synth(30, 45, 4) }) {
+                    assertSame(carver, factory.reuse(carver, image, horizontal, type));
+                    SeamCarverBase fresh = (SeamCarverBase) factory.create(image, horizontal, type);
+                    fresh.setUpdate(false);
+                    assertArrayEquals(fresh.toImage(), carver.toImage());
+                    carver.remove(9, false, 0);
+                    fresh.remove(9, false, 0);
+                    carver.add(15, false, 0);
+                    fresh.add(15, false, 0);
+                    assertArrayEquals(fresh.toImage(), carver.toImage(), type + " " + horizontal);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SeamCarverForwardTest {
+    private static int threads;
+
+    @BeforeAll
+    static void setThreads() {
+        threads = Utils.getThreads();
+        Utils.setThreads(4);
+    }
+
+    @AfterAll
+    static void restoreThreads() {
+        Utils.setThreads(threads);
+    }
+
+    // 前向能量的代价，from为从上一行走来的列偏移，边界处缺少的邻居用边界像素本身代替
+    private static long cost(int[][] gray, int h, int w, int from) {
+        int last = gray[0].length - 1;
+        int l = gray[h][Math.max(w - 1, 0)], r = gray[h][Math.min(w + 1, last)];
+        int up = Math.abs(r - l);
+        if (h == 0 || from == 0)
+            return up;
+        return up + Math.abs(gray[h - 1][w] - (from < 0 ? l : r));
+    }
+
+    // 独立实现的动态规划，返回最小的seam代价
+    private static long optimum(int[][] gray) {
+        int width = gray[0].length;
+        long[] above = new long[width];
+        for (int w = 0; w < width; w++) {
+            above[w] = cost(gray, 0, w, 0);
+        }
+        for (int h = 1; h < gray.length; h++) {
+            long[] row = new long[width];
+            for (int w = 0; w < width; w++) {
+                long best = above[w] + cost(gray, h, w, 0);
+                if (w > 0)
+                    best = Math.min(best, above[w - 1] + cost(gray, h, w, -1));
+                if (w < width - 1)
+                    best = Math.min(best, above[w + 1] + cost(gray, h, w, 1));
+                row[w] = best;
+            }
+            above = row;
+        }
+        long min = Long.MAX_VALUE;
+        for (long value : above) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private static long seamCost(int[][] gray, int[] path) {
+        long sum = cost(gray, 0, path[0], 0);
+        for (int h = 1; h < path.length; h++) {
+            sum += cost(gray, h, path[h], path[h - 1] - path[h]);
+        }
+        return sum;
+    }
+
+    // 沿back-pointer回溯得到的seam是连贯的，并且代价等于穷举的最优值
+    @Test
+    void findSeamIsOptimal() {
+        Random random = new Random(1);
+        for (int t = 0; t < 200; t++) {
+            int height = 1 + random.nextInt(30), width = 1 + random.nextInt(40);
+            int[][] image = new int[height][width];
+            for (int[] row : image) {
+                for (int w = 0; w < width; w++) {
+                    int v = random.nextInt(4) * 60; // 灰度只取几个值，代价相同的情况很多
+                    row[w] = (v << 16) | (v << 8) | v;
+                }
+            }
+            SeamCarverForward carver = new SeamCarverForward(image);
+            int[][] gray = TestImages.rows(carver.gray, carver.maxWidth, width, height);
+            int[] path = carver.findSeam();
+            assertTrue(TestImages.connected(path, width), "case " + t);
+            assertEquals(optimum(gray), seamCost(gray, path), "case " + t);
+            assertEquals(optimum(gray), carver.map[height - 1][path[height - 1]], "case " + t);
+        }
+    }
+
+    @Test
+    void parallelMatchesSerial() {
+        SeamCarverForward parallel = new SeamCarverForward(TestImages.synth(70, 1200, 7));
+        SeamCarverForward serial = new SeamCarverForward(TestImages.synth(70, 1200, 7));
+        serial.setParallel(false);
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(TestImages.map(serial), TestImages.map(parallel), "step " + i);
+            assertArrayEquals(serial.findSeam(), parallel.findSeam(), "step " + i);
+            parallel.remove(false, 0);
+            serial.remove(false, 0);
+        }
+    }
+
+    // 删除和插入之后的能量图与在当前图像上新建的carver相同
+    @Test
+    void mapMatchesFreshCarver() {
+        SeamCarverForward carver = new SeamCarverForward(TestImages.synth(50, 70, 4));
+        carver.remove(15, false, 0);
+        carver.add(10, false, 0);
+        SeamCarverForward fresh = new SeamCarverForward(TestImages.pixels(carver));
+        assertArrayEquals(TestImages.map(fresh), TestImages.map(carver));
+    }
+
+    @Test
+    void batchSeamsDoNotCross() {
+        SeamCarverForward carver = new SeamCarverForward(TestImages.synth(50, 90, 5));
+        int[][] paths = carver.findSeams(20);
+        assertTrue(paths.length > 1);
+        assertTrue(TestImages.ordered(paths));
+        for (int[] path : paths) {
+            assertTrue(TestImages.connected(path, carver.width));
+        }
+    }
+
+    // 涂抹的掩码只改变被涂抹像素自身的代价，灰度图像和其它像素的代价不变
+    @Test
+    void maskKeepsGray() {
+        SeamCarverForward carver = new SeamCarverForward(TestImages.synth(30, 40, 8));
+        int[] gray = carver.gray.clone();
+        int[][] map = TestImages.map(carver);
+        for (int h = 0; h < carver.height; h++) {
+            carver.setEnergy(25, h, -SeamCarverForward.MASK);
+        }
+        carver.energyMap();
+        assertArrayEquals(gray, carver.gray);
+        assertEquals(map[0][24], carver.map[0][24]);
+        assertEquals(map[0][25] - SeamCarverForward.MASK, carver.map[0][25]);
+        int[] path = carver.findSeam();
+        for (int h = 0; h < carver.height; h++) {
+            assertEquals(25, path[h]);
+        }
+    }
+}
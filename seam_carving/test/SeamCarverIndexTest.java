@@ -0,0 +1,58 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SeamCarverIndexTest {
+    // 按删除顺序直接调整到任意宽度，结果与逐个删除seam相同
+    @Test
+    void anyWidthMatchesRemoval() {
+        for (boolean horizontal : new boolean[] { false, true }) {
+            SeamCarverIndex index = new SeamCarverIndex(new SeamCarverBackward(TestImages.synth(40, 60, 11),
+                    horizontal));
+            int size = horizontal ? 40 : 60;
+            for (int target : new int[] { size - 1, size - 7, size / 2, 3, 1, size }) {
+                SeamCarverBackward carver = new SeamCarverBackward(TestImages.synth(40, 60, 11), horizontal);
+                carver.remove(size - target, false, 0);
+                index.setWidth(target);
+                assertArrayEquals(carver.toImage(), index.toImage(), "width " + target);
+            }
+        }
+    }
+
+    // 写入缓存文件后映射读回，得到相同的图像
+    @Test
+    void cacheRoundTrip(@TempDir File dir) throws IOException {
+        File source = new File(dir, "image.png");
+        Utils.writeImage(TestImages.synth(30, 50, 2), source);
+        SeamCarverFactory factory = new SeamCarverFactory();
+        SeamCarverIndex built = factory.createIndex(source, false, EnergyType.BACKWARD);
+        File cache = SeamIndexFile.cacheFile(source, false, EnergyType.BACKWARD);
+        assertTrue(cache.isFile());
+        SeamCarverIndex read = SeamIndexFile.read(cache, source, false, EnergyType.BACKWARD);
+        assertNotNull(read);
+        for (int target : new int[] { 49, 20, 1 }) {
+            built.setWidth(target);
+            read.setWidth(target);
+            assertArrayEquals(built.toImage(), read.toImage(), "width " + target);
+        }
+    }
+
+    // 内存预算不够而改用金字塔时，按金字塔缓存，不会当作反向能量的结果读回
+    @Test
+    void fallbackIsCachedUnderActualType(@TempDir File dir) throws IOException {
+        File source = new File(dir, "image.png");
+        Utils.writeImage(TestImages.synth(30, 50, 2), source);
+        SeamCarverFactory factory = new SeamCarverFactory();
+        factory.setMemoryBudget(SeamCarverFactory.estimate(50, 30, EnergyType.PYRAMID));
+        factory.createIndex(source, false, EnergyType.BACKWARD);
+        assertTrue(SeamIndexFile.cacheFile(source, false, EnergyType.PYRAMID).isFile());
+        assertFalse(SeamIndexFile.cacheFile(source, false, EnergyType.BACKWARD).exists());
+    }
+}
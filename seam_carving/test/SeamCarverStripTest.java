@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SeamCarverStripTest {
+    private static int[][] rgb(int[][] image) {
+        for (int[] row : image) {
+            for (int w = 0; w < row.length; w++) {
+                row[w] &= 0xFFFFFF;
+            }
+        }
+        return image;
+    }
+
+    // 在映射文件中分段删除的结果与内存中的反向能量carver相同
+    @Test
+    void matchesInMemoryCarver(@TempDir File dir) throws IOException {
+        File source = new File(dir, "image.png"), target = new File(dir, "carved.png");
+        Utils.writeImage(TestImages.synth(120, 160, 7), source);
+        SeamCarverBackward carver = new SeamCarverBackward(Utils.readImage(source));
+        carver.setUpdate(false);
+        carver.remove(40, false, 0);
+        try (SeamCarverStrip strip = SeamCarverStrip.read(source, dir)) {
+            assertEquals(40, strip.remove(40));
+            strip.write(target);
+        }
+        assertArrayEquals(rgb(carver.toImage()), rgb(Utils.readImage(target)));
+    }
+
+    @Test
+    void batchRemovesRequestedCount(@TempDir File dir) throws IOException {
+        File source = new File(dir, "image.png"), target = new File(dir, "carved.png");
+        Utils.writeImage(TestImages.synth(80, 120, 3), source);
+        try (SeamCarverStrip strip = SeamCarverStrip.read(source, dir)) {
+            strip.setBatchSize(16);
+            assertEquals(50, strip.remove(50));
+            strip.write(target);
+        }
+        int[][] image = Utils.readImage(target);
+        assertEquals(70, image[0].length);
+        assertEquals(80, image.length);
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class StandardEnergyTest {
+    private static void assertEnergy(EnergyFunction function, SeamCarverBase carver) {
+        int[] full = function.compute(carver.gray, carver.maxWidth, carver.width, carver.height);
+        assertArrayEquals(TestImages.rows(full, carver.maxWidth, carver.width, carver.height),
+                TestImages.rows(carver.energy, carver.maxWidth, carver.width, carver.height), function.name());
+    }
+
+    // 删除和插入seam之后按半径增量更新的能量与整幅重新计算相同
+    @Test
+    void incrementalMatchesCompute() {
+        for (StandardEnergy function : StandardEnergy.values()) {
+            for (boolean horizontal : new boolean[] { false, true }) {
+                SeamCarverBackward carver = new SeamCarverBackward(TestImages.synth(60, 50, 4), horizontal,
+                        function);
+                carver.setUpdate(false);
+                for (int i = 0; i < 10; i++) {
+                    carver.remove(false, 0);
+                }
+                carver.setBatchSize(6);
+                carver.remove(12, false, 0);
+                carver.add(9, false, 0);
+                assertEnergy(function, carver);
+
+                SeamCarverPyramid pyramid = new SeamCarverPyramid(TestImages.synth(60, 50, 4), horizontal, function);
+                pyramid.setUpdate(false);
+                pyramid.remove(15, false, 0);
+                pyramid.add(5, false, 0);
+                assertEnergy(function, pyramid);
+            }
+        }
+    }
+
+    // 逐个像素计算与按行更新的结果相同
+    @Test
+    void pixelMatchesRow() {
+        SeamCarverBackward carver = new SeamCarverBackward(TestImages.synth(20, 30, 6));
+        for (StandardEnergy function : StandardEnergy.values()) {
+            int[] full = function.compute(carver.gray, carver.maxWidth, carver.width, carver.height);
+            int[] pixels = new int[full.length];
+            for (int h = 0; h < carver.height; h++) {
+                for (int w = 0; w < carver.width; w++) {
+                    pixels[h * carver.maxWidth + w] = function.energy(carver.gray, carver.maxWidth, carver.width,
+                            carver.height, w, h);
+                }
+            }
+            assertArrayEquals(full, pixels, function.name());
+        }
+    }
+}
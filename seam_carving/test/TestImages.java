@@ -0,0 +1,66 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// 测试用的合成图像和比较方法
+final class TestImages {
+    private TestImages() {
+    }
+
+    // 平滑的渐变加上噪声，能量各处不同，seam的选择不依赖相同能量时的取舍
+    static int[][] synth(int height, int width, long seed) {
+        Random random = new Random(seed);
+        int[][] image = new int[height][width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = (int) (128 + 60 * Math.sin(x * 0.07 + y * 0.03) + 40 * Math.cos(y * 0.11)) +
+                        random.nextInt(30);
+                int g = (x * 255 / width) ^ (y & 63);
+                image[y][x] = 0xFF000000 | ((r & 0xFF) << 16) | ((g & 0xFF) << 8) | ((r + y) & 0xFF);
+            }
+        }
+        return image;
+    }
+
+    // carver当前的图像，按carver内部的方向
+    static int[][] pixels(SeamCarverBase carver) {
+        return rows(carver.image, carver.maxWidth, carver.width, carver.height);
+    }
+
+    // 按行存储、步长为stride的平面中左侧width列
+    static int[][] rows(int[] plane, int stride, int width, int height) {
+        int[][] result = new int[height][];
+        for (int h = 0; h < height; h++) {
+            result[h] = Arrays.copyOfRange(plane, h * stride, h * stride + width);
+        }
+        return result;
+    }
+
+    // 能量图中左侧width列
+    static int[][] map(SeamCarverBase carver) {
+        int[][] result = new int[carver.height][];
+        for (int h = 0; h < carver.height; h++) {
+            result[h] = Arrays.copyOf(carver.map[h], carver.width);
+        }
+        return result;
+    }
+
+    // 批量取出的seam按从左到右排列，在每一行都严格递增，即互不相交也不交叉
+    static boolean ordered(int[][] paths) {
+        for (int i = 1; i < paths.length; i++) {
+            for (int h = 0; h < paths[i].length; h++) {
+                if (paths[i - 1][h] >= paths[i][h])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // 相邻两行的列号最多相差1，并且都在[0, width)之内
+    static boolean connected(int[] path, int width) {
+        for (int h = 0; h < path.length; h++) {
+            if (path[h] < 0 || path[h] >= width || (h > 0 && Math.abs(path[h] - path[h - 1]) > 1))
+                return false;
+        }
+        return true;
+    }
+}